@@ -0,0 +1,55 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf.benchmark;
+
+import com.hwdmedia.amf.Amf0Reader;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Amf0Reader throughput benchmark
+ * 
+ * @author Gennadiy Kozlenko
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Amf0ReaderBenchmark {
+    
+    @Param({ "numbers", "shortAscii", "longAscii", "shortMultiByte", "longMultiByte",
+        "nestedObjects", "ecmaArray", "strictArray", "pojo", "rtmpCommand", "onMetaData" })
+    public String payload;
+    
+    private byte[] data;
+    
+    @Setup
+    public void setup() throws Exception {
+        data = Payloads.encode(Payloads.create(payload));
+    }
+    
+    @Benchmark
+    public void read(Blackhole blackhole) throws Exception {
+        Amf0Reader reader = new Amf0Reader(data);
+        while (reader.hasNext()) {
+            blackhole.consume(reader.read());
+        }
+    }
+    
+}
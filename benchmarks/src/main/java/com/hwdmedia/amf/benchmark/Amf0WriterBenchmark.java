@@ -0,0 +1,76 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf.benchmark;
+
+import com.hwdmedia.amf.Amf0Writer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Amf0Writer throughput benchmark
+ * 
+ * @author Gennadiy Kozlenko
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Amf0WriterBenchmark {
+    
+    @Param({ "numbers", "shortAscii", "longAscii", "shortMultiByte", "longMultiByte",
+        "nestedObjects", "ecmaArray", "strictArray", "pojo", "rtmpCommand", "onMetaData" })
+    public String payload;
+    
+    private Object[] values;
+    
+    private Amf0Writer writer;
+    
+    @Setup
+    public void setup() {
+        values = Payloads.create(payload);
+        writer = new Amf0Writer();
+    }
+    
+    /**
+     * Write with a new writer on each operation
+     * @return 
+     */
+    @Benchmark
+    public byte[] write() throws Exception {
+        try (Amf0Writer writer = new Amf0Writer()) {
+            for (Object value : values) {
+                writer.write(value);
+            }
+            return writer.getBytes();
+        }
+    }
+    
+    /**
+     * Write with a reused writer
+     * @return 
+     */
+    @Benchmark
+    public int writeReused() throws Exception {
+        writer.reset();
+        for (Object value : values) {
+            writer.write(value);
+        }
+        return writer.size();
+    }
+    
+}
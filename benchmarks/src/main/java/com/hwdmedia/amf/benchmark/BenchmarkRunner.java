@@ -0,0 +1,36 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Benchmarks runner
+ * 
+ * Runs benchmarks with GC profiler so ops/s is reported together with
+ * bytes allocated per operation (gc.alloc.rate.norm). Accepts regular JMH
+ * command line options.
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public final class BenchmarkRunner {
+    
+    private BenchmarkRunner() {
+    }
+    
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+    
+}
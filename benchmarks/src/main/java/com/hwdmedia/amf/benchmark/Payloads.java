@@ -0,0 +1,188 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf.benchmark;
+
+import com.hwdmedia.amf.Amf0Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Benchmark payloads
+ * 
+ * @author Gennadiy Kozlenko
+ */
+final class Payloads {
+    
+    /**
+     * Status object used by POJO payload
+     */
+    public static class Status {
+        public String level = "status";
+        public String code = "NetStream.Play.Start";
+        public String description = "Started playing stream.";
+        public double clientid = 1234567.0;
+        public boolean isFastPlay = false;
+    }
+    
+    private Payloads() {
+    }
+    
+    /**
+     * Create payload values
+     * @param name
+     * @return 
+     */
+    static Object[] create(String name) {
+        switch (name) {
+            case "numbers":
+                Object[] numbers = new Object[64];
+                for (int i = 0; i < numbers.length; i++) {
+                    numbers[i] = i * 1.5;
+                }
+                return numbers;
+                
+            case "shortAscii":
+                return new Object[] { "onStatus", "NetStream.Play.Start", "status" };
+                
+            case "longAscii":
+                return new Object[] { repeat("Lorem ipsum dolor sit amet. ", 4096) };
+                
+            case "shortMultiByte":
+                return new Object[] { "강남스타일", "Привет, мир", "日本語" };
+                
+            case "longMultiByte":
+                return new Object[] { repeat("강남스타일 Привет, мир ", 4096) };
+                
+            case "nestedObjects":
+                return new Object[] { nested(6) };
+                
+            case "ecmaArray":
+                Map<String, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < 256; i++) {
+                    map.put("key" + i, i % 2 == 0 ? (Object) (double) i : "value" + i);
+                }
+                return new Object[] { map };
+                
+            case "strictArray":
+                List<Object> list = new ArrayList<>();
+                for (int i = 0; i < 1024; i++) {
+                    list.add((double) i);
+                }
+                return new Object[] { list };
+                
+            case "pojo":
+                return new Object[] { new Status() };
+                
+            case "rtmpCommand":
+                return rtmpCommand();
+                
+            case "onMetaData":
+                return onMetaData();
+                
+            default:
+                throw new IllegalArgumentException("Unknown payload: " + name);
+        }
+    }
+    
+    /**
+     * Encode payload values
+     * @param values
+     * @return 
+     */
+    static byte[] encode(Object[] values) throws Exception {
+        try (Amf0Writer writer = new Amf0Writer()) {
+            for (Object value : values) {
+                writer.write(value);
+            }
+            return writer.getBytes();
+        }
+    }
+    
+    /**
+     * RTMP connect command
+     * @return 
+     */
+    private static Object[] rtmpCommand() {
+        Map<String, Object> command = new LinkedHashMap<>();
+        command.put("app", "live");
+        command.put("flashVer", "FMLE/3.0 (compatible; FMSc/1.0)");
+        command.put("swfUrl", "rtmp://media.example.com/live");
+        command.put("tcUrl", "rtmp://media.example.com/live");
+        command.put("fpad", false);
+        command.put("capabilities", 239.0);
+        command.put("audioCodecs", 3575.0);
+        command.put("videoCodecs", 252.0);
+        command.put("videoFunction", 1.0);
+        command.put("objectEncoding", 0.0);
+        return new Object[] { "connect", 1.0, command };
+    }
+    
+    /**
+     * Typical onMetaData with keyframes index
+     * @return 
+     */
+    private static Object[] onMetaData() {
+        List<Object> times = new ArrayList<>();
+        List<Object> positions = new ArrayList<>();
+        for (int i = 0; i < 3600; i++) {
+            times.add(i * 2.0);
+            positions.add(13.0 + i * 524288.0);
+        }
+        Map<String, Object> keyframes = new LinkedHashMap<>();
+        keyframes.put("times", times);
+        keyframes.put("filepositions", positions);
+        Map<String, Object> metaData = new LinkedHashMap<>();
+        metaData.put("duration", 7200.0);
+        metaData.put("width", 1280.0);
+        metaData.put("height", 720.0);
+        metaData.put("videodatarate", 2000.0);
+        metaData.put("framerate", 25.0);
+        metaData.put("videocodecid", 7.0);
+        metaData.put("audiodatarate", 128.0);
+        metaData.put("audiosamplerate", 44100.0);
+        metaData.put("audiosamplesize", 16.0);
+        metaData.put("stereo", true);
+        metaData.put("audiocodecid", 10.0);
+        metaData.put("encoder", "Lavf58.29.100");
+        metaData.put("filesize", 1887436800.0);
+        metaData.put("hasKeyframes", true);
+        metaData.put("keyframes", keyframes);
+        return new Object[] { "onMetaData", metaData };
+    }
+    
+    /**
+     * Nested objects tree
+     * @param depth
+     * @return 
+     */
+    private static Map<String, Object> nested(int depth) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("name", "level" + depth);
+        map.put("value", (double) depth);
+        if (depth > 0) {
+            map.put("left", nested(depth - 1));
+            map.put("right", nested(depth - 1));
+        }
+        return map;
+    }
+    
+    /**
+     * Repeat string
+     * @param text
+     * @param count
+     * @return 
+     */
+    private static String repeat(String text, int count) {
+        char[] chars = new char[text.length() * count];
+        for (int i = 0; i < count; i++) {
+            text.getChars(0, text.length(), chars, i * text.length());
+        }
+        return new String(chars);
+    }
+    
+}
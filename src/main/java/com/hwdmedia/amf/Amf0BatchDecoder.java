@@ -0,0 +1,276 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parallel decoder of independent AMF0 messages
+ * 
+ * Messages are split into batches decoded on the fork/join pool. Each batch
+ * is decoded by its own reader, reused for every message of the batch with
+ * references dropped between messages. Results are returned in the order of
+ * messages, failure of a message is reported in its result only.
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public final class Amf0BatchDecoder implements Closeable {
+    
+    /**
+     * Decoded message
+     */
+    public static final class Result {
+        
+        private final List<Object> values;
+        
+        private final Exception error;
+        
+        private Result(List<Object> values, Exception error) {
+            this.values = values;
+            this.error = error;
+        }
+        
+        /**
+         * Check message is decoded
+         * @return
+         */
+        public boolean isSuccess() {
+            return null == error;
+        }
+        
+        /**
+         * Get values of the message
+         * @return values or null if message is failed
+         */
+        public List<Object> getValues() {
+            return values;
+        }
+        
+        /**
+         * Get error of the message
+         * @return AmfException or runtime exception of corrupt data, null if
+         * message is decoded. Nesting overflowing the stack is reported as
+         * AmfException.
+         */
+        public Exception getError() {
+            return error;
+        }
+    
+    }
+    
+    // Minimum number of messages decoded by one reader
+    private static final int MIN_BATCH = 16;
+    
+    // Batches per pool thread for balancing of uneven messages
+    private static final int BATCHES_PER_THREAD = 8;
+    
+    private final ForkJoinPool pool;
+    
+    private final boolean ownPool;
+    
+    private ClassAliasRegistry classRegistry;
+    
+    private StringCache stringCache;
+    
+    private DecodeLimits limits = DecodeLimits.UNLIMITED;
+    
+    private boolean primitiveArrays;
+    
+    private XmlMode xmlMode = XmlMode.DOCUMENT;
+    
+    private DateMode dateMode = DateMode.DATE;
+    
+    /**
+     * Class constructor. Messages are decoded on own pool of available
+     * processors size.
+     */
+    public Amf0BatchDecoder() {
+        this.pool = new ForkJoinPool();
+        this.ownPool = true;
+    }
+    
+    /**
+     * Class constructor
+     * @param pool pool to decode on, not shut down by decoder
+     */
+    public Amf0BatchDecoder(ForkJoinPool pool) {
+        this.pool = pool;
+        this.ownPool = false;
+    }
+    
+    /**
+     * Set registry of typed object classes
+     * @param classRegistry
+     */
+    public void setClassRegistry(ClassAliasRegistry classRegistry) {
+        this.classRegistry = classRegistry;
+    }
+    
+    /**
+     * Set cache of keys and short string values shared by all readers
+     * @param stringCache
+     */
+    public void setStringCache(StringCache stringCache) {
+        this.stringCache = stringCache;
+    }
+    
+    /**
+     * Set decoding limits of every message
+     * @param limits
+     */
+    public void setDecodeLimits(DecodeLimits limits) {
+        this.limits = limits;
+    }
+    
+    /**
+     * Read strict arrays of numbers and booleans as primitive arrays
+     * @param primitiveArrays
+     */
+    public void setPrimitiveArrays(boolean primitiveArrays) {
+        this.primitiveArrays = primitiveArrays;
+    }
+    
+    /**
+     * Set how AMF0 XML documents are read, AMF3 XML is always parsed to
+     * Document
+     * @param xmlMode
+     */
+    public void setXmlMode(XmlMode xmlMode) {
+        this.xmlMode = xmlMode;
+    }
+    
+    /**
+     * Set how AMF0 dates are read, AMF3 dates are always read as Date
+     * @param dateMode
+     */
+    public void setDateMode(DateMode dateMode) {
+        this.dateMode = dateMode;
+    }
+    
+    /**
+     * Decode messages. Buffers are not modified and must not be modified
+     * until decoding is finished.
+     * @param messages buffers or slices of messages
+     * @return results in the order of messages
+     */
+    public List<Result> decode(List<ByteBuffer> messages) {
+        Result[] results = new Result[messages.size()];
+        int batch = Math.max(MIN_BATCH, results.length / (pool.getParallelism() * BATCHES_PER_THREAD));
+        pool.invoke(new DecodeTask(messages, results, 0, results.length, batch));
+        return Collections.unmodifiableList(Arrays.asList(results));
+    }
+    
+    /**
+     * Decode values of the index
+     * @param index
+     * @return results in the order of values
+     * @throws IOException
+     */
+    public List<Result> decode(Amf0Index index) throws IOException {
+        List<ByteBuffer> messages = new ArrayList<>(index.size());
+        for (int i = 0; i < index.size(); i++) {
+            messages.add(index.getValue(i));
+        }
+        return decode(messages);
+    }
+    
+    /**
+     * Shut down own pool
+     */
+    @Override
+    public void close() {
+        if (ownPool) {
+            pool.shutdown();
+        }
+    }
+    
+    /**
+     * Create reader of the decoder settings
+     * @return
+     */
+    private Amf0Reader createReader() {
+        Amf0Reader reader = new Amf0Reader(ByteBuffer.allocate(0));
+        reader.setClassRegistry(classRegistry);
+        reader.setStringCache(stringCache);
+        reader.setDecodeLimits(limits);
+        reader.setPrimitiveArrays(primitiveArrays);
+        reader.setXmlMode(xmlMode);
+        reader.setDateMode(dateMode);
+        return reader;
+    }
+    
+    /**
+     * Decode all values of the message
+     * @param reader
+     * @param message
+     * @return
+     */
+    private static Result decode(Amf0Reader reader, ByteBuffer message) {
+        reader.reset(message.duplicate());
+        List<Object> values = new ArrayList<>(1);
+        try {
+            while (reader.hasNext()) {
+                values.add(reader.read());
+            }
+            return new Result(values, null);
+        } catch (AmfException | RuntimeException ex) {
+            return new Result(null, ex);
+        } catch (StackOverflowError ex) {
+            // Nesting is not limited by default, so it's the stack to limit it
+            return new Result(null, new AmfException("Nesting too deep", ex));
+        }
+    }
+    
+    /**
+     * Task decoding range of messages
+     */
+    private final class DecodeTask extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final List<ByteBuffer> messages;
+        
+        private final Result[] results;
+        
+        private final int from;
+        
+        private final int to;
+        
+        private final int batch;
+        
+        DecodeTask(List<ByteBuffer> messages, Result[] results, int from, int to, int batch) {
+            this.messages = messages;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.batch = batch;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from <= batch) {
+                Amf0Reader reader = createReader();
+                for (int i = from; i < to; i++) {
+                    results[i] = decode(reader, messages.get(i));
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new DecodeTask(messages, results, from, middle, batch),
+                    new DecodeTask(messages, results, middle, to, batch));
+        }
+    
+    }
+
+}
@@ -0,0 +1,302 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resumable incremental AMF0 decoder
+ * 
+ * Data is fed in chunks as they arrive. When a value is incomplete decoder
+ * returns NEED_MORE_INPUT and continues from the start of the incomplete
+ * token after the next chunk is fed. Decoded parts of AMF0 values are kept
+ * and incomplete strings are detected by their length before decoding.
+ * AMF3 value after the avmplus object marker is a single token and is
+ * decoded from its start again after every chunk, so large AMF3 values
+ * should be fed in large chunks.
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public final class Amf0Decoder {
+    
+    /**
+     * Decoding status
+     */
+    public enum Status {
+        VALUE_READY,
+        NEED_MORE_INPUT
+    }
+    
+    private static final int INITIAL_CAPACITY = 4096;
+    
+    private static final int INITIAL_DEPTH = 8;
+    
+    private ByteBuffer buffer;
+    
+    private Amf0Parser parser;
+    
+    private List<Object> references = new ArrayList<>();
+    
+    private ClassAliasRegistry classRegistry;
+    
+    private StringCache stringCache;
+    
+    private DecodeLimits limits = DecodeLimits.UNLIMITED;
+    
+    // Open containers stack
+    private Object[] containers = new Object[INITIAL_DEPTH];
+    
+    private ClassCodec[] codecs = new ClassCodec[INITIAL_DEPTH];
+    
+    private String[] keys = new String[INITIAL_DEPTH];
+    
+    private int depth;
+    
+    private Object value;
+    
+    /**
+     * Class constructor
+     */
+    public Amf0Decoder() {
+        buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+        buffer.flip();
+        createParser();
+    }
+    
+    /**
+     * Set registry of typed object classes
+     * @param classRegistry 
+     */
+    public void setClassRegistry(ClassAliasRegistry classRegistry) {
+        this.classRegistry = classRegistry;
+        parser.setClassRegistry(classRegistry);
+    }
+    
+    /**
+     * Set cache of keys and short string values
+     * @param stringCache 
+     */
+    public void setStringCache(StringCache stringCache) {
+        this.stringCache = stringCache;
+        parser.setStringCache(stringCache);
+    }
+    
+    /**
+     * Set decoding limits
+     * @param limits 
+     */
+    public void setDecodeLimits(DecodeLimits limits) {
+        this.limits = limits;
+        parser.setDecodeLimits(limits);
+    }
+    
+    /**
+     * Feed next chunk of data
+     * @param chunk 
+     */
+    public void feed(ByteBuffer chunk) {
+        parser.discard(buffer.position());
+        buffer.compact();
+        if (buffer.remaining() < chunk.remaining()) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + chunk.remaining()));
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+            parser.setBuffer(buffer);
+        }
+        buffer.put(chunk);
+        buffer.flip();
+    }
+    
+    /**
+     * Feed next chunk of data
+     * @param chunk
+     * @param offset
+     * @param length 
+     */
+    public void feed(byte[] chunk, int offset, int length) {
+        feed(ByteBuffer.wrap(chunk, offset, length));
+    }
+    
+    /**
+     * Decode next value
+     * @return VALUE_READY when value is available by getValue() or
+     * NEED_MORE_INPUT when fed data ends in the middle of value
+     * @throws AmfException 
+     */
+    public Status decode() throws AmfException {
+        while (true) {
+            Amf0Token token = parser.nextToken();
+            if (depth == 0 && token != Amf0Token.NEED_MORE_INPUT) {
+                // References are scoped to the top level value
+                references.clear();
+            }
+            Object result;
+            switch (token) {
+                case NEED_MORE_INPUT:
+                    return Status.NEED_MORE_INPUT;
+                
+                case KEY:
+                    keys[depth - 1] = parser.getString();
+                    continue;
+                
+                case START_OBJECT:
+                case START_ECMA_ARRAY:
+                    push(new CompactMap<String, Object>(), null);
+                    continue;
+                
+                case START_TYPED_OBJECT:
+                    Class<?> clazz = null == classRegistry ? null : classRegistry.findClass(parser.getString());
+                    if (null == clazz) {
+                        push(new CompactMap<String, Object>(), null);
+                    } else {
+                        ClassCodec codec = ClassCodec.forClass(clazz);
+                        push(codec.newInstance(), codec);
+                    }
+                    continue;
+                
+                case START_STRICT_ARRAY:
+                    push(new ArrayList<>(), null);
+                    continue;
+                
+                case END_OBJECT:
+                case END_ECMA_ARRAY:
+                case END_STRICT_ARRAY:
+                    depth--;
+                    result = containers[depth];
+                    if (result instanceof CompactMap) {
+                        ((CompactMap) result).trimToSize();
+                    }
+                    containers[depth] = null;
+                    codecs[depth] = null;
+                    keys[depth] = null;
+                    break;
+                
+                case NUMBER:
+                    result = parser.getDouble();
+                    break;
+                
+                case BOOLEAN:
+                    result = parser.getBoolean();
+                    break;
+                
+                case STRING:
+                    result = parser.getString();
+                    break;
+                
+                case NULL:
+                case UNDEFINED:
+                case UNSUPPORTED:
+                    result = null;
+                    break;
+                
+                case REFERENCE:
+                    int index = parser.getReference();
+                    if (index >= references.size()) {
+                        throw new AmfException("Invalid reference key: " + index);
+                    }
+                    result = references.get(index);
+                    break;
+                
+                case DATE:
+                    result = parser.getDate();
+                    break;
+                
+                case XML_DOCUMENT:
+                    result = Xml.parse(parser.getBuffer(), parser.getStringOffset(), parser.getStringLength());
+                    break;
+                
+                case AVMPLUS_OBJECT:
+                    result = parser.getAmf3Value();
+                    break;
+                
+                default:
+                    throw new AmfException("Unexpected token: " + token);
+            }
+            if (depth == 0) {
+                value = result;
+                return Status.VALUE_READY;
+            }
+            add(result);
+        }
+    }
+    
+    /**
+     * Get decoded value
+     * @return 
+     */
+    public Object getValue() {
+        return value;
+    }
+    
+    /**
+     * Discard buffered data, decoding state and references
+     */
+    public void reset() {
+        buffer.clear();
+        buffer.flip();
+        references.clear();
+        Arrays.fill(containers, null);
+        Arrays.fill(codecs, null);
+        Arrays.fill(keys, null);
+        depth = 0;
+        value = null;
+        createParser();
+    }
+    
+    /**
+     * Create parser over the buffer
+     */
+    private void createParser() {
+        parser = new Amf0Parser(buffer);
+        parser.setIncremental(true);
+        parser.setClassRegistry(classRegistry);
+        parser.setStringCache(stringCache);
+        parser.setDecodeLimits(limits);
+    }
+    
+    /**
+     * Open container
+     * @param container
+     * @param codec 
+     */
+    private void push(Object container, ClassCodec codec) {
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+            codecs = Arrays.copyOf(codecs, depth * 2);
+            keys = Arrays.copyOf(keys, depth * 2);
+        }
+        references.add(container);
+        containers[depth] = container;
+        codecs[depth] = codec;
+        depth++;
+    }
+    
+    /**
+     * Add value to the current container
+     * @param result
+     * @throws AmfException 
+     */
+    private void add(Object result) throws AmfException {
+        int top = depth - 1;
+        Object container = containers[top];
+        if (null != codecs[top]) {
+            ClassCodec.Property property = codecs[top].getProperty(keys[top]);
+            if (null != property) {
+                property.set(container, result);
+            }
+        } else if (container instanceof List) {
+            ((List) container).add(result);
+        } else {
+            ((Map) container).put(keys[top], result);
+        }
+    }
+
+}
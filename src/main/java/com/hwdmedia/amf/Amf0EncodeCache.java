@@ -0,0 +1,267 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of encoded immutable values
+ * 
+ * Values marked immutable are encoded once and written by writers sharing
+ * the cache as a copy of the encoded bytes. Least recently used values are
+ * evicted when the cache exceeds its entries or bytes bound. Values which
+ * contain references or AMF3 data can't be copied into other messages and
+ * are encoded every time.
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public final class Amf0EncodeCache {
+    
+    /**
+     * Immutable value marker. Marker is a cache key: by the value identity
+     * or by the key supplied by caller.
+     */
+    public static final class Value {
+        
+        private final Object key;
+        
+        private final Object value;
+        
+        private Value(Object key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+        
+        /**
+         * Get value
+         * @return
+         */
+        public Object getValue() {
+            return value;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Value)) {
+                return false;
+            }
+            Value other = (Value) obj;
+            if (null == key) {
+                return null == other.key && value == other.value;
+            }
+            return key.equals(other.key);
+        }
+        
+        @Override
+        public int hashCode() {
+            return null == key ? System.identityHashCode(value) : key.hashCode();
+        }
+    
+    }
+    
+    /**
+     * Encoded value
+     */
+    static final class Entry {
+        
+        private final byte[] data;
+        
+        private final int complexCount;
+        
+        /**
+         * Class constructor
+         * @param data encoded value or null when value can't be copied
+         * @param complexCount
+         */
+        Entry(byte[] data, int complexCount) {
+            this.data = data;
+            this.complexCount = complexCount;
+        }
+        
+        /**
+         * Get encoded value
+         * @return null when value can't be copied
+         */
+        byte[] getData() {
+            return data;
+        }
+        
+        /**
+         * Get number of objects and arrays in the value
+         * @return
+         */
+        int getComplexCount() {
+            return complexCount;
+        }
+    
+    }
+    
+    private final int maxEntries;
+    
+    private final long maxBytes;
+    
+    private final LinkedHashMap<Value, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    
+    private long bytes;
+    
+    private long hits;
+    
+    private long misses;
+    
+    private long evictions;
+    
+    /**
+     * Class constructor
+     * @param maxEntries maximum number of cached values
+     * @param maxBytes maximum size of cached values in bytes
+     */
+    public Amf0EncodeCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+    
+    /**
+     * Mark value immutable, value is cached by identity
+     * @param value
+     * @return marker to write instead of the value
+     */
+    public static Value immutable(Object value) {
+        return new Value(null, value);
+    }
+    
+    /**
+     * Mark value immutable, value is cached by the key
+     * @param key
+     * @param value
+     * @return marker to write instead of the value
+     */
+    public static Value immutable(Object key, Object value) {
+        if (null == key) {
+            throw new NullPointerException("Key is null");
+        }
+        return new Value(key, value);
+    }
+    
+    /**
+     * Get number of values written from cache
+     * @return
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+    
+    /**
+     * Get number of values encoded
+     * @return
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+    
+    /**
+     * Get number of evicted values
+     * @return
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+    
+    /**
+     * Get number of cached values
+     * @return
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+    
+    /**
+     * Get size of cached values in bytes
+     * @return
+     */
+    public synchronized long getEncodedSize() {
+        return bytes;
+    }
+    
+    /**
+     * Remove all values
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+    
+    /**
+     * Get encoded value
+     * @param value
+     * @return encoded value or null if it's not cached or can't be copied
+     */
+    synchronized Entry get(Value value) {
+        Entry entry = entries.get(value);
+        if (null != entry && null != entry.getData()) {
+            hits++;
+            return entry;
+        }
+        misses++;
+        return entry;
+    }
+    
+    /**
+     * Put encoded value evicting least recently used values
+     * @param value
+     * @param entry
+     */
+    synchronized void put(Value value, Entry entry) {
+        Entry previous = entries.put(value, entry);
+        if (null != previous) {
+            bytes -= size(previous);
+        }
+        bytes += size(entry);
+        Iterator<Map.Entry<Value, Entry>> iterator = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && iterator.hasNext()) {
+            bytes -= size(iterator.next().getValue());
+            iterator.remove();
+            evictions++;
+        }
+    }
+    
+    /**
+     * Create entry of encoded value
+     * @param data
+     * @return
+     * @throws AmfException
+     */
+    static Entry encode(byte[] data) throws AmfException {
+        Amf0Parser parser = new Amf0Parser(data);
+        int complexCount = 0;
+        while (parser.hasNext()) {
+            switch (parser.nextToken()) {
+                case START_OBJECT:
+                case START_TYPED_OBJECT:
+                case START_ECMA_ARRAY:
+                case START_STRICT_ARRAY:
+                    complexCount++;
+                    break;
+                case REFERENCE:
+                case AVMPLUS_OBJECT:
+                    // Reference indexes and AMF3 tables depend on the message
+                    return new Entry(null, 0);
+            }
+        }
+        return new Entry(data, complexCount);
+    }
+    
+    /**
+     * Get size of the entry
+     * @param entry
+     * @return
+     */
+    private static long size(Entry entry) {
+        return null == entry.getData() ? 0 : entry.getData().length;
+    }
+
+}
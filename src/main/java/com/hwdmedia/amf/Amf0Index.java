@@ -0,0 +1,320 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Offsets index of concatenated AMF0 values
+ * 
+ * File is memory-mapped and values are skipped by their lengths without
+ * decoding to collect offsets. Any value is then read directly by its number.
+ * Values are read independently, so references between values are not
+ * supported. Incomplete value at the end of the file is left out of the
+ * index until update() after it's appended completely.
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public final class Amf0Index implements Closeable {
+    
+    // Index file header "AMIX"
+    private static final int MAGIC = 0x414d4958;
+    
+    private static final int INITIAL_CAPACITY = 1024;
+    
+    private static final long MAX_WINDOW = Integer.MAX_VALUE;
+    
+    // Leading bytes of the file checked to match the index
+    private static final int FINGERPRINT_SIZE = 4096;
+    
+    private RandomAccessFile file;
+    
+    private FileChannel channel;
+    
+    private long size;
+    
+    // Currently mapped part of the file
+    private ByteBuffer window;
+    
+    private long windowOffset;
+    
+    // Values offsets followed by the end of the last value
+    private long[] offsets = new long[INITIAL_CAPACITY];
+    
+    private int count;
+    
+    private StringCache stringCache;
+    
+    /**
+     * Class constructor. Builds index of the whole file.
+     * @param file
+     * @throws IOException
+     * @throws AmfException
+     */
+    public Amf0Index(File file) throws IOException, AmfException {
+        this(file, null);
+    }
+    
+    /**
+     * Class constructor. Index is loaded from the index file when it exists
+     * and only values appended after it was saved are scanned.
+     * @param file
+     * @param indexFile
+     * @throws IOException
+     * @throws AmfException
+     */
+    public Amf0Index(File file, File indexFile) throws IOException, AmfException {
+        this.file = new RandomAccessFile(file, "r");
+        try {
+            channel = this.file.getChannel();
+            if (null != indexFile && indexFile.exists()) {
+                load(indexFile);
+            }
+            update();
+        } catch (IOException | AmfException e) {
+            close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Set cache of keys and short string values
+     * @param stringCache
+     */
+    public void setStringCache(StringCache stringCache) {
+        this.stringCache = stringCache;
+    }
+    
+    /**
+     * Index values appended to the file since the last scan
+     * @return number of new values
+     * @throws IOException
+     * @throws AmfException
+     */
+    public int update() throws IOException, AmfException {
+        if (null == channel) {
+            throw new IOException("Index is closed");
+        }
+        size = channel.size();
+        int indexed = count;
+        long offset = offsets[count];
+        Amf0Parser parser = null;
+        while (offset < size) {
+            if (null == parser || offset >= windowOffset + window.limit()) {
+                map(offset);
+                parser = new Amf0Parser(window.duplicate());
+                parser.getBuffer().position((int) (offset - windowOffset));
+            }
+            try {
+                parser.nextToken();
+                parser.skipValue();
+            } catch (BufferUnderflowException ex) {
+                if (windowOffset + window.limit() >= size) {
+                    // Value is not written completely yet
+                    break;
+                }
+                if (offset == windowOffset) {
+                    throw new AmfException("Value at " + offset + " is larger than " + MAX_WINDOW + " bytes");
+                }
+                parser = null;
+                continue;
+            }
+            offset = windowOffset + parser.position();
+            add(offset);
+        }
+        return count - indexed;
+    }
+    
+    /**
+     * Get number of indexed values
+     * @return
+     */
+    public int size() {
+        return count;
+    }
+    
+    /**
+     * Get file offset of the value
+     * @param index
+     * @return
+     */
+    public long getOffset(int index) {
+        check(index);
+        return offsets[index];
+    }
+    
+    /**
+     * Get encoded value without copying
+     * @param index
+     * @return read-only slice of the file mapping
+     * @throws IOException
+     */
+    public ByteBuffer getValue(int index) throws IOException {
+        check(index);
+        long start = offsets[index];
+        long end = offsets[index + 1];
+        if (null == window || start < windowOffset || end > windowOffset + window.limit()) {
+            map(start);
+        }
+        ByteBuffer slice = window.asReadOnlyBuffer();
+        slice.limit((int) (end - windowOffset));
+        slice.position((int) (start - windowOffset));
+        return slice.slice();
+    }
+    
+    /**
+     * Get reader of the value
+     * @param index
+     * @return
+     * @throws IOException
+     */
+    public Amf0Reader getReader(int index) throws IOException {
+        Amf0Reader reader = new Amf0Reader(getValue(index));
+        reader.setStringCache(stringCache);
+        return reader;
+    }
+    
+    /**
+     * Read the value
+     * @param index
+     * @return
+     * @throws IOException
+     * @throws AmfException
+     */
+    public Object read(int index) throws IOException, AmfException {
+        return getReader(index).read();
+    }
+    
+    /**
+     * Save index to the file. Indexed file length and checksum of its leading
+     * bytes are saved along to detect replaced file.
+     * @param indexFile
+     * @throws IOException
+     */
+    public void save(File indexFile) throws IOException {
+        long fingerprint = fingerprint(size);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(size);
+            out.writeLong(fingerprint);
+            out.writeInt(count);
+            for (int i = 0; i <= count; i++) {
+                out.writeLong(offsets[i]);
+            }
+        }
+    }
+    
+    /**
+     * Release the file mapping
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel = null;
+        if (null != file) {
+            file.close();
+            file = null;
+        }
+    }
+    
+    /**
+     * Load index from the file, index not matching the file is ignored
+     * @param indexFile
+     * @throws IOException
+     */
+    private void load(File indexFile) throws IOException {
+        try (RandomAccessFile index = new RandomAccessFile(indexFile, "r")) {
+            FileChannel indexChannel = index.getChannel();
+            ByteBuffer data = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+            if (data.remaining() < 24 || data.getInt() != MAGIC) {
+                return;
+            }
+            long length = data.getLong();
+            long fingerprint = data.getLong();
+            if (length > channel.size() || fingerprint != fingerprint(length)) {
+                // File was truncated or replaced
+                return;
+            }
+            int loaded = data.getInt();
+            if (loaded < 0 || data.remaining() != (loaded + 1L) * 8) {
+                return;
+            }
+            long[] values = new long[Math.max(loaded + 1, INITIAL_CAPACITY)];
+            data.asLongBuffer().get(values, 0, loaded + 1);
+            if (values[loaded] > length) {
+                return;
+            }
+            offsets = values;
+            count = loaded;
+        }
+    }
+    
+    /**
+     * Calculate checksum of the leading bytes of the file
+     * @param length indexed file length
+     * @return
+     * @throws IOException
+     */
+    private long fingerprint(long length) throws IOException {
+        if (null == channel) {
+            throw new IOException("Index is closed");
+        }
+        ByteBuffer data = ByteBuffer.allocate((int) Math.min(length, FINGERPRINT_SIZE));
+        while (data.hasRemaining() && channel.read(data, data.position()) >= 0) {
+            // Read until filled
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data.array(), 0, data.position());
+        return crc.getValue();
+    }
+    
+    /**
+     * Add end of the next value
+     * @param end
+     */
+    private void add(long end) {
+        if (count + 1 == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[++count] = end;
+    }
+    
+    /**
+     * Check value index
+     * @param index
+     */
+    private void check(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + count);
+        }
+    }
+    
+    /**
+     * Map part of the file starting from the offset
+     * @param offset
+     * @throws IOException
+     */
+    private void map(long offset) throws IOException {
+        if (null == channel) {
+            throw new IOException("Index is closed");
+        }
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(size - offset, MAX_WINDOW));
+        windowOffset = offset;
+    }
+
+}
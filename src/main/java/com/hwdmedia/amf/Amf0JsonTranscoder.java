@@ -0,0 +1,1089 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import org.w3c.dom.Document;
+
+/**
+ * Streaming AMF0 to JSON transcoder
+ * 
+ * Converts AMF0 data to UTF-8 encoded JSON and back without building maps and
+ * lists, strings are escaped or unescaped while copied between buffers.
+ * Every top level value is followed by a new line in JSON, so output of
+ * several calls is valid JSON Lines.
+ * 
+ * AMF0 values are written to JSON as:
+ * <ul>
+ * <li>number - number, NaN and infinities - null</li>
+ * <li>boolean - true or false</li>
+ * <li>string, long string and XML document - string</li>
+ * <li>null, undefined and unsupported - null</li>
+ * <li>date - number of milliseconds since epoch, timezone is dropped</li>
+ * <li>object, typed object and ECMA array - object, class name is dropped</li>
+ * <li>strict array - array</li>
+ * <li>reference - copy of the referenced object or array, reference to the
+ * enclosing object or array - null</li>
+ * <li>AMF3 value - decoded value written by its type</li>
+ * </ul>
+ * 
+ * JSON values are written to AMF0 as number, boolean, string (long string
+ * above 65535 bytes), null, anonymous object and strict array.
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public final class Amf0JsonTranscoder implements Closeable {
+    
+    private static final int INITIAL_DEPTH = 8;
+    
+    // Size of output written to the stream at once
+    private static final int FLUSH_SIZE = 8192;
+    
+    // Integers up to 2^53 are exact doubles
+    private static final long MAX_EXACT = 1L << 53;
+    
+    private static final long MAX_MANTISSA = 100000000000000000L;
+    
+    // Powers of ten exact in double
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    
+    private AmfOutput out;
+    
+    private OutputStream stream;
+    
+    private ClassAliasRegistry classRegistry;
+    
+    private DecodeLimits limits = DecodeLimits.UNLIMITED;
+    
+    private final byte[] digits = new byte[20];
+    
+    private final StringBuilder chars = new StringBuilder(32);
+    
+    // AMF0 input
+    private ByteBuffer amf;
+    
+    // Offsets of AMF0 objects and arrays by reference index
+    private int[] references = new int[INITIAL_DEPTH];
+    
+    private boolean[] complete = new boolean[INITIAL_DEPTH];
+    
+    private int referenceCount;
+    
+    // Reference indexes of open AMF0 containers by depth
+    private int[] open = new int[INITIAL_DEPTH];
+    
+    // JSON input
+    private ByteBuffer json;
+    
+    private int position;
+    
+    private int limit;
+    
+    // Open JSON containers stack
+    private byte[] containers = new byte[INITIAL_DEPTH];
+    
+    private int[] countOffsets = new int[INITIAL_DEPTH];
+    
+    private int[] counts = new int[INITIAL_DEPTH];
+    
+    /**
+     * Class constructor
+     */
+    public Amf0JsonTranscoder() {
+        out = new AmfOutput();
+    }
+    
+    /**
+     * Class constructor. Data is written into the buffer starting from its
+     * current position. When the buffer is full it's replaced by a larger
+     * one of the same kind, so the result must be taken by getByteBuffer().
+     * @param buffer
+     */
+    public Amf0JsonTranscoder(ByteBuffer buffer) {
+        out = new AmfOutput(buffer);
+    }
+    
+    /**
+     * Class constructor. Buffers are borrowed from the pool and returned
+     * back on grow and on close.
+     * @param pool
+     */
+    public Amf0JsonTranscoder(ByteBufferPool pool) {
+        out = new AmfOutput(pool);
+    }
+    
+    /**
+     * Set registry of typed object classes used by AMF3 values
+     * @param classRegistry
+     */
+    public void setClassRegistry(ClassAliasRegistry classRegistry) {
+        this.classRegistry = classRegistry;
+    }
+    
+    /**
+     * Set decoding limits of AMF0 data, depth and string limits apply to JSON
+     * @param limits
+     */
+    public void setDecodeLimits(DecodeLimits limits) {
+        this.limits = limits;
+    }
+    
+    /**
+     * Transcode AMF0 values to JSON. AMF0 references are resolved within the
+     * top level value.
+     * @param amf
+     * @throws IOException
+     * @throws AmfException
+     */
+    public void toJson(ByteBuffer amf) throws IOException, AmfException {
+        Amf0Parser parser = createParser(amf);
+        this.amf = amf;
+        try {
+            while (parser.hasNext()) {
+                referenceCount = 0;
+                int start = parser.position();
+                writeValue(parser, parser.nextToken(), start, false);
+                out.put('\n');
+                if (null != stream && out.size() >= FLUSH_SIZE) {
+                    out.writeTo(stream);
+                }
+            }
+        } finally {
+            this.amf = null;
+        }
+    }
+    
+    /**
+     * Transcode AMF0 values to JSON written to the stream by chunks
+     * @param amf
+     * @param stream
+     * @throws IOException
+     * @throws AmfException
+     */
+    public void toJson(ByteBuffer amf, OutputStream stream) throws IOException, AmfException {
+        this.stream = stream;
+        try {
+            toJson(amf);
+            out.writeTo(stream);
+        } finally {
+            this.stream = null;
+        }
+    }
+    
+    /**
+     * Transcode JSON values to AMF0
+     * @param json
+     * @throws IOException
+     * @throws AmfException
+     */
+    public void toAmf(ByteBuffer json) throws IOException, AmfException {
+        this.json = json;
+        position = json.position();
+        limit = json.limit();
+        try {
+            while (skipWhitespace()) {
+                readValue();
+                // Nothing is patched between top level values
+                if (null != stream && out.size() >= FLUSH_SIZE) {
+                    out.writeTo(stream);
+                }
+            }
+        } finally {
+            json.position(position);
+            this.json = null;
+        }
+    }
+    
+    /**
+     * Transcode JSON values to AMF0 written to the stream by chunks
+     * @param json
+     * @param stream
+     * @throws IOException
+     * @throws AmfException
+     */
+    public void toAmf(ByteBuffer json, OutputStream stream) throws IOException, AmfException {
+        this.stream = stream;
+        try {
+            toAmf(json);
+            out.writeTo(stream);
+        } finally {
+            this.stream = null;
+        }
+    }
+    
+    /**
+     * Get bytes array of transcoded data
+     * @return
+     */
+    public byte[] getBytes() {
+        byte[] bytes = new byte[size()];
+        getByteBuffer().get(bytes);
+        return bytes;
+    }
+    
+    /**
+     * Get ByteBuffer of transcoded data. Returned buffer shares content with
+     * the transcoder, so no data is copied. It's valid until the next
+     * transcoding, reset or close of the pooled transcoder.
+     * @return
+     */
+    public ByteBuffer getByteBuffer() {
+        return out.getByteBuffer();
+    }
+    
+    /**
+     * Get size of transcoded data
+     * @return
+     */
+    public int size() {
+        return out.size();
+    }
+    
+    /**
+     * Discard transcoded data to reuse the transcoder
+     */
+    public void reset() {
+        out.reset();
+    }
+    
+    /**
+     * Close all resources
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        out.release();
+    }
+    
+    /**
+     * Create AMF0 parser
+     * @param data
+     * @return
+     */
+    private Amf0Parser createParser(ByteBuffer data) {
+        Amf0Parser parser = new Amf0Parser(data);
+        parser.setClassRegistry(classRegistry);
+        parser.setDecodeLimits(limits);
+        return parser;
+    }
+    
+    /**
+     * Write AMF0 value started by the token
+     * @param parser
+     * @param token first token of the value
+     * @param start buffer offset of the value
+     * @param copy value is a copy of the referenced one
+     * @throws IOException
+     * @throws AmfException
+     */
+    private void writeValue(Amf0Parser parser, Amf0Token token, int start, boolean copy) throws IOException, AmfException {
+        // No comma before the first entry of container and after key
+        boolean first = true;
+        while (true) {
+            switch (token) {
+                case KEY:
+                    if (!first) {
+                        out.put(',');
+                    }
+                    writeString(parser.getBuffer(), parser.getStringOffset(), parser.getStringLength());
+                    out.put(':');
+                    first = true;
+                    break;
+                
+                case END_OBJECT:
+                case END_ECMA_ARRAY:
+                    out.put('}');
+                    closeContainer(parser.getDepth(), copy);
+                    first = false;
+                    break;
+                
+                case END_STRICT_ARRAY:
+                    out.put(']');
+                    closeContainer(parser.getDepth(), copy);
+                    first = false;
+                    break;
+                
+                default:
+                    if (!first) {
+                        out.put(',');
+                    }
+                    first = writeToken(parser, token, start, copy);
+            }
+            if (parser.getDepth() == 0) {
+                return;
+            }
+            if (null != stream && out.size() >= FLUSH_SIZE) {
+                out.writeTo(stream);
+            }
+            start = parser.position();
+            token = parser.nextToken();
+        }
+    }
+    
+    /**
+     * Write scalar value or container start
+     * @param parser
+     * @param token
+     * @param start
+     * @param copy
+     * @return true if container was opened
+     * @throws IOException
+     * @throws AmfException
+     */
+    private boolean writeToken(Amf0Parser parser, Amf0Token token, int start, boolean copy) throws IOException, AmfException {
+        switch (token) {
+            case NUMBER:
+                writeNumber(parser.getDouble());
+                return false;
+            
+            case BOOLEAN:
+                writeAscii(parser.getBoolean() ? "true" : "false");
+                return false;
+            
+            case STRING:
+            case XML_DOCUMENT:
+                writeString(parser.getBuffer(), parser.getStringOffset(), parser.getStringLength());
+                return false;
+            
+            case DATE:
+                writeLong((long) parser.getDouble());
+                return false;
+            
+            case REFERENCE:
+                writeReference(parser.getReference());
+                return false;
+            
+            case AVMPLUS_OBJECT:
+                writeObject(parser.getAmf3Value());
+                return false;
+            
+            case START_OBJECT:
+            case START_TYPED_OBJECT:
+            case START_ECMA_ARRAY:
+                out.put('{');
+                openContainer(parser.getDepth(), start, copy);
+                return true;
+            
+            case START_STRICT_ARRAY:
+                out.put('[');
+                openContainer(parser.getDepth(), start, copy);
+                return true;
+            
+            default:
+                writeAscii("null");
+                return false;
+        }
+    }
+    
+    /**
+     * Register opened object or array
+     * @param depth
+     * @param start
+     * @param copy
+     */
+    private void openContainer(int depth, int start, boolean copy) {
+        if (copy) {
+            // Copies were counted when read first time
+            return;
+        }
+        if (referenceCount == references.length) {
+            references = Arrays.copyOf(references, referenceCount * 2);
+            complete = Arrays.copyOf(complete, referenceCount * 2);
+        }
+        if (depth > open.length) {
+            open = Arrays.copyOf(open, depth * 2);
+        }
+        references[referenceCount] = start;
+        complete[referenceCount] = false;
+        open[depth - 1] = referenceCount++;
+    }
+    
+    /**
+     * Mark object or array complete
+     * @param depth depth after close
+     * @param copy
+     */
+    private void closeContainer(int depth, boolean copy) {
+        if (!copy) {
+            complete[open[depth]] = true;
+        }
+    }
+    
+    /**
+     * Write copy of the referenced object or array
+     * @param index
+     * @throws IOException
+     * @throws AmfException
+     */
+    private void writeReference(int index) throws IOException, AmfException {
+        if (index >= referenceCount) {
+            throw new AmfException("Invalid reference: " + index);
+        }
+        if (!complete[index]) {
+            // JSON can't express circular references
+            writeAscii("null");
+            return;
+        }
+        Amf0Parser parser = createParser(amf.duplicate());
+        int start = references[index];
+        complete[index] = false;
+        try {
+            writeValue(parser, parser.valueAt(start), start, true);
+        } finally {
+            complete[index] = true;
+        }
+    }
+    
+    /**
+     * Write decoded AMF3 value
+     * @param value
+     * @throws AmfException
+     */
+    private void writeObject(Object value) throws AmfException {
+        if (null == value) {
+            writeAscii("null");
+        } else if (value instanceof Number) {
+            writeNumber(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            writeAscii(value.toString());
+        } else if (value instanceof Date) {
+            writeLong(((Date) value).getTime());
+        } else if (value instanceof Document) {
+            writeString(Xml.transform((Document) value));
+        } else if (value instanceof Map) {
+            out.put('{');
+            boolean first = true;
+            for (Object item: ((Map) value).entrySet()) {
+                Map.Entry entry = (Map.Entry) item;
+                if (!first) {
+                    out.put(',');
+                }
+                first = false;
+                writeString(String.valueOf(entry.getKey()));
+                out.put(':');
+                writeObject(entry.getValue());
+            }
+            out.put('}');
+        } else if (value instanceof Collection) {
+            out.put('[');
+            boolean first = true;
+            for (Object item: (Collection) value) {
+                if (!first) {
+                    out.put(',');
+                }
+                first = false;
+                writeObject(item);
+            }
+            out.put(']');
+        } else if (value.getClass().isArray()) {
+            out.put('[');
+            int length = Array.getLength(value);
+            for (int i = 0; i < length; i++) {
+                if (i > 0) {
+                    out.put(',');
+                }
+                writeObject(Array.get(value, i));
+            }
+            out.put(']');
+        } else {
+            writeString(value.toString());
+        }
+    }
+    
+    /**
+     * Write number, integers are written without fraction
+     * @param value
+     */
+    private void writeNumber(double value) {
+        if (Math.abs(value) <= MAX_EXACT && value == Math.rint(value)) {
+            writeLong((long) value);
+        } else if (Double.isNaN(value) || Double.isInfinite(value)) {
+            writeAscii("null");
+        } else {
+            chars.setLength(0);
+            chars.append(value);
+            writeAscii(chars);
+        }
+    }
+    
+    /**
+     * Write integer number
+     * @param value
+     */
+    private void writeLong(long value) {
+        int i = digits.length;
+        long rest = value;
+        do {
+            digits[--i] = (byte) ('0' + Math.abs(rest % 10));
+            rest /= 10;
+        } while (rest != 0);
+        if (value < 0) {
+            digits[--i] = '-';
+        }
+        out.put(digits, i, digits.length - i);
+    }
+    
+    /**
+     * Write ASCII literal
+     * @param value
+     */
+    private void writeAscii(CharSequence value) {
+        int length = value.length();
+        ByteBuffer buffer = out.ensure(length);
+        for (int i = 0; i < length; i++) {
+            buffer.put((byte) value.charAt(i));
+        }
+    }
+    
+    /**
+     * Write string
+     * @param value
+     */
+    private void writeString(String value) {
+        ByteBuffer bytes = ByteBuffer.allocate((int) Utf8.encodedLength(value));
+        Utf8.encode(value, bytes);
+        writeString(bytes, 0, bytes.capacity());
+    }
+    
+    /**
+     * Write UTF-8 encoded string escaping quotes, backslashes and control
+     * characters
+     * @param data
+     * @param offset
+     * @param length
+     */
+    private void writeString(ByteBuffer data, int offset, int length) {
+        ByteBuffer buffer = out.ensure(length + 2);
+        buffer.put((byte) '"');
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            int c = data.get(i) & 0xFF;
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                buffer.put((byte) c);
+                continue;
+            }
+            // Escape and the rest of the string
+            buffer = out.ensure(end - i + 6);
+            buffer.put((byte) '\\');
+            switch (c) {
+                case '"':
+                case '\\':
+                    buffer.put((byte) c);
+                    break;
+                case '\n':
+                    buffer.put((byte) 'n');
+                    break;
+                case '\r':
+                    buffer.put((byte) 'r');
+                    break;
+                case '\t':
+                    buffer.put((byte) 't');
+                    break;
+                case '\b':
+                    buffer.put((byte) 'b');
+                    break;
+                case '\f':
+                    buffer.put((byte) 'f');
+                    break;
+                default:
+                    buffer.put((byte) 'u');
+                    buffer.put((byte) '0');
+                    buffer.put((byte) '0');
+                    buffer.put(HEX[c >> 4]);
+                    buffer.put(HEX[c & 0x0F]);
+            }
+        }
+        buffer.put((byte) '"');
+    }
+    
+    /**
+     * Read JSON value
+     * @throws AmfException
+     */
+    private void readValue() throws AmfException {
+        int depth = 0;
+        do {
+            int c = next();
+            switch (c) {
+                case '{':
+                    out.put(AmfTypes.AMF0_OBJECT);
+                    depth = push(depth, (byte) '{');
+                    if (peek() == '}') {
+                        position++;
+                        writeObjectEnd();
+                        depth--;
+                        break;
+                    }
+                    readKey();
+                    continue;
+                
+                case '[':
+                    out.put(AmfTypes.AMF0_STRICT_ARRAY);
+                    depth = push(depth, (byte) '[');
+                    if (peek() == ']') {
+                        position++;
+                        depth--;
+                        break;
+                    }
+                    counts[depth - 1] = 1;
+                    continue;
+                
+                case '"':
+                    readString(false);
+                    break;
+                
+                case 't':
+                    readLiteral("true");
+                    out.put(AmfTypes.AMF0_BOOLEAN);
+                    out.put(1);
+                    break;
+                
+                case 'f':
+                    readLiteral("false");
+                    out.put(AmfTypes.AMF0_BOOLEAN);
+                    out.put(0);
+                    break;
+                
+                case 'n':
+                    readLiteral("null");
+                    out.put(AmfTypes.AMF0_NULL);
+                    break;
+                
+                default:
+                    if (c != '-' && (c < '0' || c > '9')) {
+                        throw unexpected(c);
+                    }
+                    position--;
+                    readNumber();
+            }
+            // Close containers ended after the value
+            while (depth > 0) {
+                c = next();
+                byte type = containers[depth - 1];
+                if (c == ',') {
+                    if (type == '{') {
+                        readKey();
+                    } else {
+                        counts[depth - 1]++;
+                    }
+                    break;
+                }
+                if (type == '{' && c == '}') {
+                    writeObjectEnd();
+                } else if (type == '[' && c == ']') {
+                    out.ensure(0).putInt(countOffsets[depth - 1], counts[depth - 1]);
+                } else {
+                    throw unexpected(c);
+                }
+                depth--;
+            }
+        } while (depth > 0);
+    }
+    
+    /**
+     * Open JSON container
+     * @param depth
+     * @param type
+     * @return new depth
+     * @throws AmfException
+     */
+    private int push(int depth, byte type) throws AmfException {
+        if (depth >= limits.getMaxDepth()) {
+            throw new AmfException("Nesting too deep: " + (depth + 1));
+        }
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+            countOffsets = Arrays.copyOf(countOffsets, depth * 2);
+            counts = Arrays.copyOf(counts, depth * 2);
+        }
+        containers[depth] = type;
+        if (type == '[') {
+            // Count is patched when array is closed
+            ByteBuffer buffer = out.ensure(4);
+            countOffsets[depth] = buffer.position();
+            counts[depth] = 0;
+            buffer.putInt(0);
+        }
+        return depth + 1;
+    }
+    
+    /**
+     * Write object end marker
+     */
+    private void writeObjectEnd() {
+        ByteBuffer buffer = out.ensure(3);
+        buffer.putShort((short) 0);
+        buffer.put(AmfTypes.AMF0_OBJECT_END);
+    }
+    
+    /**
+     * Read object key and colon
+     * @throws AmfException
+     */
+    private void readKey() throws AmfException {
+        int c = next();
+        if (c != '"') {
+            throw unexpected(c);
+        }
+        readString(true);
+        c = next();
+        if (c != ':') {
+            throw unexpected(c);
+        }
+    }
+    
+    /**
+     * Read string after the opening quote. Encoded length is counted first
+     * to write length before the string.
+     * @param key
+     * @throws AmfException
+     */
+    private void readString(boolean key) throws AmfException {
+        int start = position;
+        long length = 0;
+        boolean escaped = false;
+        int i = start;
+        while (true) {
+            if (i >= limit) {
+                throw new AmfException("Unterminated JSON string at " + start);
+            }
+            int c = json.get(i++);
+            if (c == '"') {
+                break;
+            }
+            if (c != '\\') {
+                length++;
+                continue;
+            }
+            escaped = true;
+            c = i < limit ? json.get(i++) : -1;
+            if (c == 'u') {
+                int code = readHex(i);
+                i += 4;
+                if (isSurrogatePair(code, i)) {
+                    length += 4;
+                    i += 6;
+                } else {
+                    length += code < 0x80 || Character.isSurrogate((char) code) ? 1 : code < 0x800 ? 2 : 3;
+                }
+            } else if (isEscape(c)) {
+                length++;
+            } else {
+                throw new AmfException("Invalid JSON escape at " + (i - 2));
+            }
+        }
+        int end = i - 1;
+        if (length > limits.getMaxStringBytes()) {
+            throw new AmfException("String too long: " + length + " bytes");
+        }
+        ByteBuffer buffer;
+        if (key) {
+            if (length > 0xFFFF) {
+                throw new AmfException("Key too long: " + length + " bytes");
+            }
+            buffer = out.ensure(2 + (int) length);
+            buffer.putShort((short) length);
+        } else if (length > 0xFFFF) {
+            buffer = out.ensure(5 + (int) length);
+            buffer.put(AmfTypes.AMF0_LONG_STRING);
+            buffer.putInt((int) length);
+        } else {
+            buffer = out.ensure(3 + (int) length);
+            buffer.put(AmfTypes.AMF0_STRING);
+            buffer.putShort((short) length);
+        }
+        if (!escaped && json.hasArray()) {
+            buffer.put(json.array(), json.arrayOffset() + start, end - start);
+        } else {
+            unescape(buffer, start, end);
+        }
+        position = end + 1;
+    }
+    
+    /**
+     * Write unescaped string bytes
+     * @param buffer
+     * @param start
+     * @param end
+     */
+    private void unescape(ByteBuffer buffer, int start, int end) throws AmfException {
+        for (int i = start; i < end;) {
+            byte c = json.get(i++);
+            if (c != '\\') {
+                buffer.put(c);
+                continue;
+            }
+            c = json.get(i++);
+            switch (c) {
+                case 'n':
+                    buffer.put((byte) '\n');
+                    break;
+                case 'r':
+                    buffer.put((byte) '\r');
+                    break;
+                case 't':
+                    buffer.put((byte) '\t');
+                    break;
+                case 'b':
+                    buffer.put((byte) '\b');
+                    break;
+                case 'f':
+                    buffer.put((byte) '\f');
+                    break;
+                case 'u':
+                    int code = readHex(i);
+                    i += 4;
+                    if (isSurrogatePair(code, i)) {
+                        code = Character.toCodePoint((char) code, (char) readHex(i + 2));
+                        i += 6;
+                    }
+                    putCodePoint(buffer, code);
+                    break;
+                default:
+                    buffer.put(c);
+            }
+        }
+    }
+    
+    /**
+     * Check escape character
+     * @param c
+     * @return
+     */
+    private static boolean isEscape(int c) {
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+            case 'n':
+            case 'r':
+            case 't':
+            case 'b':
+            case 'f':
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    /**
+     * Check high surrogate is followed by escaped low surrogate
+     * @param code
+     * @param offset offset after the high surrogate escape
+     * @return
+     * @throws AmfException
+     */
+    private boolean isSurrogatePair(int code, int offset) throws AmfException {
+        return Character.isHighSurrogate((char) code) && offset + 6 <= limit
+                && json.get(offset) == '\\' && json.get(offset + 1) == 'u'
+                && Character.isLowSurrogate((char) readHex(offset + 2));
+    }
+    
+    /**
+     * Read 4 hex digits
+     * @param offset
+     * @return
+     * @throws AmfException
+     */
+    private int readHex(int offset) throws AmfException {
+        if (offset + 4 > limit) {
+            throw new AmfException("Invalid JSON escape at " + (offset - 2));
+        }
+        int code = 0;
+        for (int i = offset; i < offset + 4; i++) {
+            int digit = Character.digit(json.get(i), 16);
+            if (digit < 0) {
+                throw new AmfException("Invalid JSON escape at " + (offset - 2));
+            }
+            code = code << 4 | digit;
+        }
+        return code;
+    }
+    
+    /**
+     * Put UTF-8 encoded code point, unpaired surrogates are replaced by '?'
+     * @param buffer
+     * @param code
+     */
+    private static void putCodePoint(ByteBuffer buffer, int code) {
+        if (code < 0x80) {
+            buffer.put((byte) code);
+        } else if (code < 0x800) {
+            buffer.put((byte) (0xC0 | code >> 6));
+            buffer.put((byte) (0x80 | code & 0x3F));
+        } else if (Character.isSurrogate((char) code) && code < 0x10000) {
+            buffer.put((byte) '?');
+        } else if (code < 0x10000) {
+            buffer.put((byte) (0xE0 | code >> 12));
+            buffer.put((byte) (0x80 | code >> 6 & 0x3F));
+            buffer.put((byte) (0x80 | code & 0x3F));
+        } else {
+            buffer.put((byte) (0xF0 | code >> 18));
+            buffer.put((byte) (0x80 | code >> 12 & 0x3F));
+            buffer.put((byte) (0x80 | code >> 6 & 0x3F));
+            buffer.put((byte) (0x80 | code & 0x3F));
+        }
+    }
+    
+    /**
+     * Read rest of literal
+     * @param literal
+     * @throws AmfException
+     */
+    private void readLiteral(String literal) throws AmfException {
+        for (int i = 1; i < literal.length(); i++) {
+            if (position >= limit || json.get(position) != literal.charAt(i)) {
+                throw new AmfException("Invalid JSON literal at " + (position - i));
+            }
+            position++;
+        }
+    }
+    
+    /**
+     * Read number. Numbers of up to 15 significant digits and small exponent
+     * are converted without Double.parseDouble.
+     * @throws AmfException
+     */
+    private void readNumber() throws AmfException {
+        int start = position;
+        int i = start;
+        boolean negative = i < limit && json.get(i) == '-';
+        if (negative) {
+            i++;
+        }
+        long mantissa = 0;
+        int scale = 0;
+        boolean exact = true;
+        int digitsStart = i;
+        for (int digit; i < limit && (digit = json.get(i) - '0') >= 0 && digit <= 9; i++) {
+            if (mantissa < MAX_MANTISSA) {
+                mantissa = mantissa * 10 + digit;
+            } else {
+                exact = false;
+            }
+        }
+        if (i == digitsStart) {
+            throw new AmfException("Invalid JSON number at " + start);
+        }
+        if (i < limit && json.get(i) == '.') {
+            digitsStart = ++i;
+            for (int digit; i < limit && (digit = json.get(i) - '0') >= 0 && digit <= 9; i++) {
+                if (mantissa < MAX_MANTISSA) {
+                    mantissa = mantissa * 10 + digit;
+                    scale--;
+                } else {
+                    exact = false;
+                }
+            }
+            if (i == digitsStart) {
+                throw new AmfException("Invalid JSON number at " + start);
+            }
+        }
+        if (i < limit && (json.get(i) == 'e' || json.get(i) == 'E')) {
+            i++;
+            boolean negativeExponent = i < limit && json.get(i) == '-';
+            if (i < limit && (json.get(i) == '-' || json.get(i) == '+')) {
+                i++;
+            }
+            digitsStart = i;
+            int exponent = 0;
+            for (int digit; i < limit && (digit = json.get(i) - '0') >= 0 && digit <= 9; i++) {
+                if (exponent < 10000) {
+                    exponent = exponent * 10 + digit;
+                }
+            }
+            if (i == digitsStart) {
+                throw new AmfException("Invalid JSON number at " + start);
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+        double value;
+        if (exact && mantissa <= MAX_EXACT && scale >= -22 && scale <= 22) {
+            // Both operands are exact, so the result is correctly rounded
+            value = scale < 0 ? mantissa / POWERS_OF_TEN[-scale] : mantissa * POWERS_OF_TEN[scale];
+            if (negative) {
+                value = -value;
+            }
+        } else {
+            byte[] chars = new byte[i - start];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = json.get(start + j);
+            }
+            value = Double.parseDouble(new String(chars, StandardCharsets.US_ASCII));
+        }
+        ByteBuffer buffer = out.ensure(9);
+        buffer.put(AmfTypes.AMF0_NUMBER);
+        buffer.putDouble(value);
+        position = i;
+    }
+    
+    /**
+     * Skip whitespaces
+     * @return true if there is more input
+     */
+    private boolean skipWhitespace() {
+        while (position < limit) {
+            switch (json.get(position)) {
+                case ' ':
+                case '\t':
+                case '\n':
+                case '\r':
+                    position++;
+                    break;
+                default:
+                    return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Read next character skipping whitespaces
+     * @return
+     * @throws AmfException
+     */
+    private int next() throws AmfException {
+        if (!skipWhitespace()) {
+            throw new AmfException("Unexpected end of JSON");
+        }
+        return json.get(position++) & 0xFF;
+    }
+    
+    /**
+     * Get next character skipping whitespaces
+     * @return next character or -1 at the end of input
+     */
+    private int peek() {
+        return skipWhitespace() ? json.get(position) & 0xFF : -1;
+    }
+    
+    /**
+     * Create exception of unexpected character
+     * @param c
+     * @return
+     */
+    private AmfException unexpected(int c) {
+        if (c < 0) {
+            return new AmfException("Unexpected end of JSON");
+        }
+        return new AmfException("Unexpected JSON character '" + (char) c + "' at " + (position - 1));
+    }
+
+}
@@ -0,0 +1,864 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * AMF0 pull parser
+ * 
+ * Reads AMF0 data token by token directly from the buffer, without building
+ * maps and lists. Values of the current token are available through the
+ * getters until the next call of nextToken().
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public final class Amf0Parser {
+    
+    private static final int INITIAL_DEPTH = 8;
+    
+    private ByteBuffer data;
+    
+    private Amf0Token token;
+    
+    private double number;
+    
+    private boolean bool;
+    
+    private int timezone;
+    
+    private int reference;
+    
+    private long count;
+    
+    private int stringOffset;
+    
+    private int stringLength;
+    
+    private String string;
+    
+    private Object amf3Value;
+    
+    private Amf3Reader amf3Reader;
+    
+    private ClassAliasRegistry classRegistry;
+    
+    private StringCache stringCache;
+    
+    // Open containers stack
+    private byte[] containers = new byte[INITIAL_DEPTH];
+    
+    private long[] counts = new long[INITIAL_DEPTH];
+    
+    private int depth;
+    
+    private boolean valueExpected;
+    
+    private boolean incremental;
+    
+    // Refill buffer of stream data, null for buffer data
+    private AmfInput input;
+    
+    private DecodeLimits limits = DecodeLimits.UNLIMITED;
+    
+    // Offset of the current top level value
+    private int valueStart;
+    
+    // Max depth of the current top level value
+    private int maxDepth;
+    
+    /**
+     * Class constructor
+     * @param data
+     */
+    public Amf0Parser(ByteBuffer data) {
+        this.data = data;
+    }
+    
+    /**
+     * Class constructor
+     * @param data
+     */
+    public Amf0Parser(byte[] data) {
+        this.data = ByteBuffer.wrap(data);
+    }
+    
+    /**
+     * Set registry of typed object classes used by AMF3 values
+     * @param classRegistry
+     */
+    public void setClassRegistry(ClassAliasRegistry classRegistry) {
+        this.classRegistry = classRegistry;
+        if (null != amf3Reader) {
+            amf3Reader.setClassRegistry(classRegistry);
+        }
+    }
+    
+    /**
+     * Set cache of keys and short string values, may be shared by parsers
+     * @param stringCache
+     */
+    public void setStringCache(StringCache stringCache) {
+        this.stringCache = stringCache;
+    }
+    
+    /**
+     * Set decoding limits
+     * @param limits
+     */
+    public void setDecodeLimits(DecodeLimits limits) {
+        this.limits = limits;
+        if (null != amf3Reader) {
+            amf3Reader.setDecodeLimits(limits);
+        }
+    }
+    
+    /**
+     * Set incremental mode. In incremental mode nextToken() returns
+     * NEED_MORE_INPUT instead of throwing BufferUnderflowException when data
+     * ends in the middle of a token. Buffer position is restored to the token
+     * start, so parsing continues when more data is appended to the buffer.
+     * @param incremental
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+    
+    /**
+     * Replace buffer keeping the parser state
+     * @param data
+     */
+    void setBuffer(ByteBuffer data) {
+        this.data = data;
+        if (null != amf3Reader) {
+            amf3Reader.setBuffer(data);
+        }
+    }
+    
+    /**
+     * Read data from the refill buffer. Buffer is refilled when data ends
+     * in the middle of a token, tokens before it are discarded.
+     * @param input
+     */
+    void setInput(AmfInput input) {
+        this.input = input;
+        setBuffer(input.getBuffer());
+    }
+    
+    /**
+     * Replace buffer dropping the parser state
+     * @param data
+     */
+    void reset(ByteBuffer data) {
+        this.data = data;
+        token = null;
+        string = null;
+        depth = 0;
+        valueExpected = false;
+        valueStart = 0;
+        maxDepth = 0;
+        if (null != amf3Reader) {
+            amf3Reader.reset(data);
+        }
+    }
+    
+    /**
+     * Account bytes discarded from the buffer start by compaction
+     * @param length
+     */
+    void discard(int length) {
+        valueStart -= length;
+    }
+    
+    /**
+     * Check has next token
+     * @return
+     */
+    public boolean hasNext() {
+        if (depth > 0 || data.hasRemaining()) {
+            return true;
+        }
+        if (null == input) {
+            return false;
+        }
+        try {
+            return refill(data.position()) && data.hasRemaining();
+        } catch (AmfException ex) {
+            // Let the next read report the error
+            return true;
+        }
+    }
+    
+    /**
+     * Read next token
+     * @return next token, null at the end of data or NEED_MORE_INPUT in
+     * incremental mode
+     * @throws AmfException
+     */
+    public Amf0Token nextToken() throws AmfException {
+        string = null;
+        if (null != input) {
+            return checkBudget(readInput(-1));
+        }
+        if (!incremental) {
+            return checkBudget(next());
+        }
+        int position = data.position();
+        try {
+            if (depth == 0 && !data.hasRemaining()) {
+                return token = Amf0Token.NEED_MORE_INPUT;
+            }
+            return checkBudget(next());
+        } catch (BufferUnderflowException ex) {
+            data.position(position);
+            return token = Amf0Token.NEED_MORE_INPUT;
+        }
+    }
+    
+    /**
+     * Read next token
+     * @return
+     * @throws AmfException
+     */
+    private Amf0Token next() throws AmfException {
+        if (depth == 0) {
+            if (!data.hasRemaining()) {
+                return token = null;
+            }
+            valueStart = data.position();
+            maxDepth = 0;
+            if (null != amf3Reader) {
+                // AMF3 references are scoped to the top level value too
+                amf3Reader.resetReferences();
+            }
+            return readValue(data.get());
+        }
+        if (valueExpected) {
+            Amf0Token value = readValue(data.get());
+            valueExpected = false;
+            return value;
+        }
+        switch (containers[depth - 1]) {
+            case AmfTypes.AMF0_STRICT_ARRAY:
+                return nextElement();
+            case AmfTypes.AMF0_ECMA_ARRAY:
+                return nextEcmaKey();
+            default:
+                return nextObjectKey();
+        }
+    }
+    
+    /**
+     * Read token of the value which type marker is already consumed
+     * @param typeMarker
+     * @return
+     * @throws AmfException
+     */
+    public Amf0Token nextToken(int typeMarker) throws AmfException {
+        string = null;
+        if (depth == 0) {
+            valueStart = data.position() - 1;
+            maxDepth = 0;
+        }
+        if (null != input) {
+            return checkBudget(readInput(typeMarker));
+        }
+        return checkBudget(readValue(typeMarker));
+    }
+    
+    /**
+     * Skip the value started by the current token. Nested values of objects
+     * and arrays are walked by their lengths alone, strings are not decoded.
+     * AMF3 values are still read to keep AMF3 reference tables consistent.
+     * @return number of skipped objects and arrays including the current one
+     * @throws AmfException
+     */
+    public int skipValue() throws AmfException {
+        switch (token) {
+            case START_OBJECT:
+            case START_TYPED_OBJECT:
+            case START_ECMA_ARRAY:
+            case START_STRICT_ARRAY:
+                break;
+            default:
+                return 0;
+        }
+        int level = depth;
+        int skipped = 1;
+        while (depth >= level) {
+            string = null;
+            switch (checkBudget(null == input ? next() : readInput(-1))) {
+                case START_OBJECT:
+                case START_TYPED_OBJECT:
+                case START_ECMA_ARRAY:
+                case START_STRICT_ARRAY:
+                    skipped++;
+                    break;
+            }
+        }
+        return skipped;
+    }
+    
+    /**
+     * Compare current key with the name without decoding the key
+     * @param name
+     * @return
+     */
+    public boolean keyEquals(String name) {
+        check(token == Amf0Token.KEY);
+        if (null != string) {
+            return string.equals(name);
+        }
+        return equalsString(data, stringOffset, stringLength, name);
+    }
+    
+    /**
+     * Get current token
+     * @return
+     */
+    public Amf0Token getToken() {
+        return token;
+    }
+    
+    /**
+     * Get depth of the open containers
+     * @return
+     */
+    public int getDepth() {
+        return depth;
+    }
+    
+    /**
+     * Get number or date milliseconds
+     * @return
+     */
+    public double getDouble() {
+        check(token == Amf0Token.NUMBER || token == Amf0Token.DATE);
+        return number;
+    }
+    
+    /**
+     * Get boolean
+     * @return
+     */
+    public boolean getBoolean() {
+        check(token == Amf0Token.BOOLEAN);
+        return bool;
+    }
+    
+    /**
+     * Get string, key, XML document source or typed object class name
+     * @return
+     */
+    public String getString() {
+        check(token == Amf0Token.STRING || token == Amf0Token.KEY || token == Amf0Token.XML_DOCUMENT
+                || token == Amf0Token.START_TYPED_OBJECT);
+        if (null == string) {
+            if (null != stringCache && (token == Amf0Token.KEY || token == Amf0Token.STRING)) {
+                string = stringCache.get(data, stringOffset, stringLength);
+            } else {
+                string = decodeString(data, stringOffset, stringLength);
+            }
+        }
+        return string;
+    }
+    
+    /**
+     * Get size in bytes of the UTF-8 encoded string, key, XML document or
+     * typed object class name
+     * @return
+     */
+    public int getStringLength() {
+        check(token == Amf0Token.STRING || token == Amf0Token.KEY || token == Amf0Token.XML_DOCUMENT
+                || token == Amf0Token.START_TYPED_OBJECT);
+        return stringLength;
+    }
+    
+    /**
+     * Get date
+     * @return
+     */
+    public Date getDate() {
+        check(token == Amf0Token.DATE);
+        return new Date((long) number);
+    }
+    
+    /**
+     * Get date milliseconds since epoch
+     * @return
+     */
+    public long getEpochMillis() {
+        check(token == Amf0Token.DATE);
+        return (long) number;
+    }
+    
+    /**
+     * Get date instant
+     * @return
+     */
+    public Instant getInstant() {
+        check(token == Amf0Token.DATE);
+        return Instant.ofEpochMilli((long) number);
+    }
+    
+    /**
+     * Get date timezone, reserved by specification
+     * @return
+     */
+    public int getTimezone() {
+        check(token == Amf0Token.DATE);
+        return timezone;
+    }
+    
+    /**
+     * Get reference index
+     * @return
+     */
+    public int getReference() {
+        check(token == Amf0Token.REFERENCE);
+        return reference;
+    }
+    
+    /**
+     * Get AMF3 value switched by the avmplus object marker
+     * @return
+     */
+    public Object getAmf3Value() {
+        check(token == Amf0Token.AVMPLUS_OBJECT);
+        return amf3Value;
+    }
+    
+    /**
+     * Get declared count of ECMA or strict array entries
+     * @return
+     */
+    public long getCount() {
+        check(token == Amf0Token.START_ECMA_ARRAY || token == Amf0Token.START_STRICT_ARRAY);
+        return count;
+    }
+    
+    /**
+     * Read value by type marker
+     * @param typeMarker
+     * @return
+     * @throws AmfException
+     */
+    private Amf0Token readValue(int typeMarker) throws AmfException {
+        switch (typeMarker) {
+            case AmfTypes.AMF0_NUMBER:
+                number = data.getDouble();
+                return token = Amf0Token.NUMBER;
+            
+            case AmfTypes.AMF0_BOOLEAN:
+                bool = 0 != data.get();
+                return token = Amf0Token.BOOLEAN;
+            
+            case AmfTypes.AMF0_STRING:
+                readStringBytes(data.getShort() & 0xFFFF);
+                return token = Amf0Token.STRING;
+            
+            case AmfTypes.AMF0_OBJECT:
+                push(AmfTypes.AMF0_OBJECT, 0);
+                return token = Amf0Token.START_OBJECT;
+            
+            case AmfTypes.AMF0_NULL:
+                return token = Amf0Token.NULL;
+            
+            case AmfTypes.AMF0_UNDEFINED:
+                return token = Amf0Token.UNDEFINED;
+            
+            case AmfTypes.AMF0_UNSUPPORTED:
+                return token = Amf0Token.UNSUPPORTED;
+            
+            case AmfTypes.AMF0_REFERENCE:
+                reference = data.getShort() & 0xFFFF;
+                return token = Amf0Token.REFERENCE;
+            
+            case AmfTypes.AMF0_ECMA_ARRAY:
+                count = readCount();
+                push(AmfTypes.AMF0_ECMA_ARRAY, count);
+                return token = Amf0Token.START_ECMA_ARRAY;
+            
+            case AmfTypes.AMF0_STRICT_ARRAY:
+                count = readCount();
+                push(AmfTypes.AMF0_STRICT_ARRAY, count);
+                return token = Amf0Token.START_STRICT_ARRAY;
+            
+            case AmfTypes.AMF0_DATE:
+                number = data.getDouble();
+                timezone = data.getShort();
+                return token = Amf0Token.DATE;
+            
+            case AmfTypes.AMF0_LONG_STRING:
+                readStringBytes(data.getInt());
+                return token = Amf0Token.STRING;
+            
+            case AmfTypes.AMF0_XML_DOCUMENT:
+                readStringBytes(data.getInt());
+                return token = Amf0Token.XML_DOCUMENT;
+            
+            case AmfTypes.AMF0_TYPED_OBJECT:
+                readStringBytes(data.getShort() & 0xFFFF);
+                push(AmfTypes.AMF0_OBJECT, 0);
+                return token = Amf0Token.START_TYPED_OBJECT;
+            
+            case AmfTypes.AMF0_AVMPLUS_OBJECT:
+                if (null == amf3Reader) {
+                    amf3Reader = new Amf3Reader(data);
+                    amf3Reader.setClassRegistry(classRegistry);
+                    amf3Reader.setDecodeLimits(limits);
+                }
+                amf3Reader.mark();
+                try {
+                    amf3Value = amf3Reader.read();
+                } catch (BufferUnderflowException ex) {
+                    amf3Reader.rollback();
+                    throw ex;
+                }
+                return token = Amf0Token.AVMPLUS_OBJECT;
+            
+            default:
+                throw new AmfException("Unsupported marker type: " + typeMarker);
+        }
+    }
+    
+    /**
+     * Read next token from the refill buffer
+     * @param typeMarker consumed type marker or -1 to read next token
+     * @return
+     * @throws AmfException
+     */
+    private Amf0Token readInput(int typeMarker) throws AmfException {
+        while (true) {
+            int position = data.position();
+            if (depth == 0 && typeMarker < 0 && !data.hasRemaining() && !refill(position)) {
+                return token = null;
+            }
+            position = data.position();
+            try {
+                return typeMarker < 0 ? next() : readValue(typeMarker);
+            } catch (BufferUnderflowException ex) {
+                data.position(position);
+                if (!refill(position)) {
+                    throw ex;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Refill buffer discarding data before the offset
+     * @param offset
+     * @return false at the end of data
+     * @throws AmfException
+     */
+    private boolean refill(int offset) throws AmfException {
+        boolean more = input.refill(offset);
+        setBuffer(input.getBuffer());
+        discard(offset);
+        return more;
+    }
+    
+    /**
+     * Read next strict array element
+     * @return
+     * @throws AmfException
+     */
+    private Amf0Token nextElement() throws AmfException {
+        int top = depth - 1;
+        if (counts[top] == 0) {
+            depth--;
+            return token = Amf0Token.END_STRICT_ARRAY;
+        }
+        Amf0Token value = readValue(data.get());
+        counts[top]--;
+        return value;
+    }
+    
+    /**
+     * Read next ECMA array key. Declared count limits the number of entries,
+     * trailing object end marker is optional.
+     * @return
+     * @throws AmfException
+     */
+    private Amf0Token nextEcmaKey() throws AmfException {
+        int top = depth - 1;
+        if (counts[top] == 0) {
+            int position = data.position();
+            int remaining = data.remaining();
+            if (remaining >= 3) {
+                if (data.getShort(position) == 0 && data.get(position + 2) == AmfTypes.AMF0_OBJECT_END) {
+                    data.position(position + 3);
+                }
+            } else if ((incremental || null != input) && isEndPrefix(position, remaining)) {
+                // Wait for the rest of possible object end marker
+                throw new BufferUnderflowException();
+            }
+            depth--;
+            return token = Amf0Token.END_ECMA_ARRAY;
+        }
+        if (readKey()) {
+            depth--;
+            return token = Amf0Token.END_ECMA_ARRAY;
+        }
+        counts[top]--;
+        valueExpected = true;
+        return token = Amf0Token.KEY;
+    }
+    
+    /**
+     * Read next object key
+     * @return
+     * @throws AmfException
+     */
+    private Amf0Token nextObjectKey() throws AmfException {
+        if (readKey()) {
+            depth--;
+            return token = Amf0Token.END_OBJECT;
+        }
+        // Objects have no declared count, entries are counted while read
+        if (++counts[depth - 1] > limits.getMaxEntries()) {
+            throw new AmfException("Too many object entries: " + counts[depth - 1]);
+        }
+        valueExpected = true;
+        return token = Amf0Token.KEY;
+    }
+    
+    /**
+     * Check bytes till the end of buffer may start object end marker
+     * @param position
+     * @param remaining
+     * @return
+     */
+    private boolean isEndPrefix(int position, int remaining) {
+        for (int i = 0; i < remaining; i++) {
+            if (data.get(position + i) != (i < 2 ? 0 : AmfTypes.AMF0_OBJECT_END)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Read key or object end marker
+     * @return true if object end marker reached
+     */
+    private boolean readKey() throws AmfException {
+        int length = data.getShort() & 0xFFFF;
+        if (length == 0) {
+            if (!data.hasRemaining()) {
+                throw new BufferUnderflowException();
+            }
+            if (data.get(data.position()) == AmfTypes.AMF0_OBJECT_END) {
+                data.get();
+                return true;
+            }
+        }
+        readStringBytes(length);
+        return false;
+    }
+    
+    /**
+     * Mark string bytes and skip them
+     * @param length
+     */
+    private void readStringBytes(int length) throws AmfException {
+        if (length < 0) {
+            throw new AmfException("Invalid string length: " + (length & 0xFFFFFFFFL));
+        }
+        if (length > limits.getMaxStringBytes()) {
+            throw new AmfException("String too long: " + length + " bytes");
+        }
+        if (data.position() + (long) length - valueStart > limits.getMaxBytes()) {
+            throw new AmfException("Value exceeds " + limits.getMaxBytes() + " bytes");
+        }
+        if (data.remaining() < length) {
+            throw new BufferUnderflowException();
+        }
+        stringOffset = data.position();
+        stringLength = length;
+        data.position(stringOffset + length);
+    }
+    
+    /**
+     * Read declared count of ECMA or strict array entries
+     * @return
+     * @throws AmfException
+     */
+    private long readCount() throws AmfException {
+        long count = data.getInt() & 0xFFFFFFFFL;
+        if (count > limits.getMaxEntries()) {
+            throw new AmfException("Too many array entries: " + count);
+        }
+        return count;
+    }
+    
+    /**
+     * Check the current top level value fits the bytes budget
+     * @param token
+     * @return token
+     * @throws AmfException
+     */
+    private Amf0Token checkBudget(Amf0Token token) throws AmfException {
+        if (data.position() - valueStart > limits.getMaxBytes()) {
+            throw new AmfException("Value exceeds " + limits.getMaxBytes() + " bytes");
+        }
+        return token;
+    }
+    
+    /**
+     * Compare UTF-8 string in the buffer with the name
+     * @param data
+     * @param offset
+     * @param length
+     * @param name
+     * @return
+     */
+    static boolean equalsString(ByteBuffer data, int offset, int length, String name) {
+        int chars = name.length();
+        // UTF-8 string is never shorter than its UTF-16 form
+        if (chars > length) {
+            return false;
+        }
+        for (int i = 0; i < chars; i++) {
+            char c = name.charAt(i);
+            if (c >= 0x80) {
+                return decodeString(data, offset, length).equals(name);
+            }
+            if (data.get(offset + i) != c) {
+                return false;
+            }
+        }
+        return chars == length;
+    }
+    
+    /**
+     * Decode UTF-8 string from the buffer
+     * @param data
+     * @param offset
+     * @param length
+     * @return
+     */
+    static String decodeString(ByteBuffer data, int offset, int length) {
+        if (length == 0) {
+            return "";
+        }
+        if (data.hasArray()) {
+            return new String(data.array(), data.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+        }
+        byte[] chars = new byte[length];
+        ByteBuffer slice = data.duplicate();
+        slice.position(offset);
+        slice.get(chars);
+        return new String(chars, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Read token of the value at the buffer offset dropping the parser state
+     * @param offset
+     * @return
+     * @throws AmfException
+     */
+    Amf0Token valueAt(int offset) throws AmfException {
+        data.position(offset);
+        depth = 0;
+        valueStart = offset;
+        maxDepth = 0;
+        valueExpected = false;
+        string = null;
+        return readValue(data.get());
+    }
+    
+    /**
+     * Get buffer
+     * @return
+     */
+    ByteBuffer getBuffer() {
+        return data;
+    }
+    
+    /**
+     * Get buffer offset of the current top level value
+     * @return
+     */
+    int getValueStart() {
+        return valueStart;
+    }
+    
+    /**
+     * Get max depth of the open containers of the current top level value
+     * @return
+     */
+    int getMaxDepth() {
+        return maxDepth;
+    }
+    
+    /**
+     * Get buffer offset of the current string
+     * @return
+     */
+    int getStringOffset() {
+        return stringOffset;
+    }
+    
+    /**
+     * Get buffer position
+     * @return
+     */
+    int position() {
+        return data.position();
+    }
+    
+    /**
+     * Get read-only slice of the buffer
+     * @param start
+     * @param end
+     * @return
+     */
+    ByteBuffer slice(int start, int end) {
+        ByteBuffer slice = data.asReadOnlyBuffer();
+        slice.limit(end);
+        slice.position(start);
+        return slice.slice();
+    }
+    
+    /**
+     * Open container
+     * @param type
+     * @param size
+     */
+    private void push(byte type, long size) throws AmfException {
+        if (depth >= limits.getMaxDepth()) {
+            throw new AmfException("Nesting too deep: " + (depth + 1));
+        }
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+            counts = Arrays.copyOf(counts, depth * 2);
+        }
+        containers[depth] = type;
+        counts[depth] = size;
+        depth++;
+        if (depth > maxDepth) {
+            maxDepth = depth;
+        }
+    }
+    
+    /**
+     * Check getter is applicable to the current token
+     * @param applicable
+     */
+    private void check(boolean applicable) {
+        if (!applicable) {
+            throw new IllegalStateException("Not applicable to token " + token);
+        }
+    }
+
+}
@@ -5,39 +5,63 @@
  */
 package com.hwdmedia.amf;
 
-import java.io.IOException;
-import java.io.StringReader;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import org.w3c.dom.Document;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
 
 /**
  * AMF0 Reader
  * 
+ * Object references are scoped to one top level value as written by
+ * Amf0Writer, every value starts with an empty reference table.
+ * 
  * @author Gennadiy Kozlenko
  */
 public final class Amf0Reader {
     
-    private ByteBuffer data;
+    // Reference table placeholder of skipped objects and arrays
+    static final Object SKIPPED = new Object();
+    
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    
+    private Amf0Parser parser;
+    
+    // Reading from stream, null when reading from buffer
+    private AmfInput input;
     
     private List<Object> references = new ArrayList<>();
     
+    // Reference table is used by lazy views and can't be cleared
+    private boolean referencesShared;
+    
+    private boolean primitiveArrays;
+    
+    private XmlMode xmlMode = XmlMode.DOCUMENT;
+    
+    private DateMode dateMode = DateMode.DATE;
+    
+    private ClassAliasRegistry classRegistry;
+    
+    private StringCache stringCache;
+    
+    private int valueStart;
+    
+    private AmfMetrics metrics;
+    
     /**
      * Class constructor
      * @param data 
      */
     public Amf0Reader(ByteBuffer data) {
-        this.data = data;
+        this.parser = new Amf0Parser(data);
     }
     
     /**
@@ -45,7 +69,120 @@ public final class Amf0Reader {
      * @param data 
      */
     public Amf0Reader(byte[] data) {
-        this.data = ByteBuffer.wrap(data);
+        this.parser = new Amf0Parser(data);
+    }
+    
+    /**
+     * Class constructor. Data is read through the refill buffer of default
+     * size, stream is not closed by reader.
+     * @param in 
+     */
+    public Amf0Reader(InputStream in) {
+        this(Channels.newChannel(in), DEFAULT_BUFFER_SIZE);
+    }
+    
+    /**
+     * Class constructor. Data is read through the refill buffer, stream is
+     * not closed by reader.
+     * @param in
+     * @param bufferSize 
+     */
+    public Amf0Reader(InputStream in, int bufferSize) {
+        this(Channels.newChannel(in), bufferSize);
+    }
+    
+    /**
+     * Class constructor. Data is read through the refill buffer of default
+     * size, channel must be blocking and is not closed by reader.
+     * @param channel 
+     */
+    public Amf0Reader(ReadableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+    
+    /**
+     * Class constructor. Data is read through the refill buffer, channel must
+     * be blocking and is not closed by reader. Buffer grows over its size
+     * only while a single string longer than the buffer is read.
+     * @param channel
+     * @param bufferSize 
+     */
+    public Amf0Reader(ReadableByteChannel channel, int bufferSize) {
+        this.input = new AmfInput(channel, bufferSize);
+        this.parser = new Amf0Parser(input.getBuffer());
+        parser.setInput(input);
+    }
+    
+    /**
+     * Set registry of typed object classes. Typed objects of registered
+     * classes are read directly into class instances.
+     * @param classRegistry 
+     */
+    public void setClassRegistry(ClassAliasRegistry classRegistry) {
+        this.classRegistry = classRegistry;
+        parser.setClassRegistry(classRegistry);
+    }
+    
+    /**
+     * Set cache of keys and short string values, may be shared by readers
+     * @param stringCache 
+     */
+    public void setStringCache(StringCache stringCache) {
+        this.stringCache = stringCache;
+        parser.setStringCache(stringCache);
+    }
+    
+    /**
+     * Set decoding limits
+     * @param limits 
+     */
+    public void setDecodeLimits(DecodeLimits limits) {
+        parser.setDecodeLimits(limits);
+    }
+    
+    /**
+     * Read strict arrays of numbers as double[] and strict arrays of booleans
+     * as boolean[] instead of lists
+     * @param primitiveArrays 
+     */
+    public void setPrimitiveArrays(boolean primitiveArrays) {
+        this.primitiveArrays = primitiveArrays;
+    }
+    
+    /**
+     * Set how AMF0 XML documents are read by this reader. Amf0Decoder,
+     * LazyAmf0Source and AMF3 values always parse XML to Document.
+     * @param xmlMode 
+     */
+    public void setXmlMode(XmlMode xmlMode) {
+        this.xmlMode = xmlMode;
+    }
+    
+    /**
+     * Set how AMF0 dates are read by this reader. Amf0Decoder, LazyAmf0Source
+     * and AMF3 values always read dates as Date.
+     * @param dateMode 
+     */
+    public void setDateMode(DateMode dateMode) {
+        this.dateMode = dateMode;
+    }
+    
+    /**
+     * Set metrics of values read by read(), null to disable
+     * @param metrics 
+     */
+    public void setMetrics(AmfMetrics metrics) {
+        this.metrics = metrics;
+    }
+    
+    /**
+     * Read another buffer dropping the reader state and references
+     * @param data 
+     */
+    void reset(ByteBuffer data) {
+        parser.reset(data);
+        startValue();
+        valueStart = 0;
     }
     
     /**
@@ -53,14 +190,22 @@ public final class Amf0Reader {
      * @return 
      */
     public boolean hasNext() {
-        return data.hasRemaining();
+        return parser.hasNext();
     }
     
     /**
      * Read AMF data
      */
     public Object read() throws AmfException {
-        return read(data.get());
+        startValue();
+        if (null != metrics) {
+            return readMeasured(null);
+        }
+        Amf0Token token = parser.nextToken();
+        if (null == token) {
+            throw new AmfException("Unexpected end of data");
+        }
+        return read(token);
     }
     
     /**
@@ -69,89 +214,284 @@ public final class Amf0Reader {
      * @return 
      */
     public Object read(int typeMarker) throws AmfException {
-        switch (typeMarker) {
-            case AmfTypes.AMF0_NUMBER:
-                return data.getDouble();
+        startValue();
+        return read(parser.nextToken(typeMarker));
+    }
+    
+    /**
+     * Read AMF data lazily. Objects and arrays are returned as read-only Map
+     * and List views over the buffer, their values are decoded on first
+     * access. Buffer must not be modified while views are in use. Views
+     * written by Amf0Writer are copied as raw bytes when possible. Data read
+     * from stream is read eagerly.
+     * @return
+     * @throws AmfException 
+     */
+    public Object readLazy() throws AmfException {
+        if (null != input) {
+            return read();
+        }
+        startValue();
+        int start = parser.position();
+        Amf0Token token = parser.nextToken();
+        if (null == token) {
+            throw new AmfException("Unexpected end of data");
+        }
+        switch (token) {
+            case START_OBJECT:
+            case START_TYPED_OBJECT:
+            case START_ECMA_ARRAY:
+            case START_STRICT_ARRAY:
+                referencesShared = true;
+                return new LazyAmf0Source(parser, start, token, references, stringCache).getRoot();
+            default:
+                return read(token);
+        }
+    }
+    
+    /**
+     * Skip AMF data without materializing it
+     * @throws AmfException 
+     */
+    public void skip() throws AmfException {
+        startValue();
+        Amf0Token token = parser.nextToken();
+        if (null == token) {
+            throw new AmfException("Unexpected end of data");
+        }
+        skipCurrent();
+    }
+    
+    /**
+     * Find value by path inside the next AMF data. Path elements are object
+     * and ECMA array keys or strict array indexes. Values outside the path are
+     * skipped without materializing, the whole AMF data is consumed.
+     * @param path
+     * @return value or null if not found
+     * @throws AmfException 
+     */
+    public Object find(String... path) throws AmfException {
+        Amf0Token token = locate(path);
+        Object value = null == token ? null : read(token);
+        skipRemaining();
+        return value;
+    }
+    
+    /**
+     * Find value by path inside the next AMF data and return its encoded
+     * bytes as a read-only slice of the buffer. Not supported for data read
+     * from stream.
+     * @param path
+     * @return slice or null if not found
+     * @throws AmfException 
+     */
+    public ByteBuffer findSlice(String... path) throws AmfException {
+        if (null != input) {
+            throw new UnsupportedOperationException("Slices of stream data are not supported");
+        }
+        Amf0Token token = locate(path);
+        ByteBuffer slice = null;
+        if (null != token) {
+            int start = valueStart;
+            skipCurrent();
+            slice = parser.slice(start, parser.position());
+        }
+        skipRemaining();
+        return slice;
+    }
+    
+    /**
+     * Read AMF data as the given class instance. Objects and ECMA arrays are
+     * bound directly to the class public fields and setters without building
+     * intermediate maps.
+     * @param clazz
+     * @return
+     * @throws AmfException 
+     */
+    public <T> T read(Class<T> clazz) throws AmfException {
+        startValue();
+        if (null != metrics) {
+            return (T) readMeasured(clazz);
+        }
+        Amf0Token token = parser.nextToken();
+        if (null == token) {
+            throw new AmfException("Unexpected end of data");
+        }
+        return (T) read(token, clazz);
+    }
+    
+    /**
+     * Start top level value with empty reference table
+     */
+    private void startValue() {
+        if (referencesShared) {
+            references = new ArrayList<>();
+            referencesShared = false;
+        } else {
+            references.clear();
+        }
+    }
+    
+    /**
+     * Read AMF data reporting it to metrics
+     * @param clazz class or null to read as is
+     * @return
+     * @throws AmfException 
+     */
+    private Object readMeasured(Class<?> clazz) throws AmfException {
+        long time = System.nanoTime();
+        try {
+            Amf0Token token = parser.nextToken();
+            if (null == token) {
+                throw new AmfException("Unexpected end of data");
+            }
+            int typeMarker = parser.getBuffer().get(parser.getValueStart()) & 0xFF;
+            Object value = null == clazz ? read(token) : read(token, clazz);
+            metrics.decoded(typeMarker, parser.position() - parser.getValueStart(), parser.getMaxDepth(), System.nanoTime() - time);
+            return value;
+        } catch (AmfException | RuntimeException ex) {
+            metrics.decodeFailed(ex);
+            throw ex;
+        }
+    }
+    
+    /**
+     * Read AMF data started by token as the given type
+     * @param token
+     * @param type
+     * @return
+     * @throws AmfException 
+     */
+    private Object read(Amf0Token token, Class<?> type) throws AmfException {
+        switch (token) {
+            case START_OBJECT:
+            case START_TYPED_OBJECT:
+            case START_ECMA_ARRAY:
+                ClassCodec codec = ClassCodec.forClass(type);
+                if (codec.isBean()) {
+                    return readBean(codec);
+                }
+                break;
+            
+            case START_STRICT_ARRAY:
+                if (type == double[].class || type == boolean[].class) {
+                    return ClassCodec.convert(readPrimitiveArray(), type);
+                }
+                break;
+            
+            case DATE:
+                if (type == Long.TYPE || type == Long.class) {
+                    return parser.getEpochMillis();
+                } else if (type == Instant.class) {
+                    return parser.getInstant();
+                } else if (type == Date.class) {
+                    return parser.getDate();
+                }
+                break;
+        }
+        return ClassCodec.convert(read(token), type);
+    }
+    
+    /**
+     * Read AMF data started by token
+     * @param token
+     * @return
+     * @throws AmfException 
+     */
+    private Object read(Amf0Token token) throws AmfException {
+        switch (token) {
+            case NUMBER:
+                return parser.getDouble();
                 
-            case AmfTypes.AMF0_BOOLEAN:
-                return 0 != data.get();
+            case BOOLEAN:
+                return parser.getBoolean();
                 
-            case AmfTypes.AMF0_STRING:
-                return readString();
+            case STRING:
+                return parser.getString();
                 
-            case AmfTypes.AMF0_OBJECT:
-                return readObject();
+            case START_OBJECT:
+                return readObjectEntries();
                 
-            case AmfTypes.AMF0_NULL:
-            case AmfTypes.AMF0_UNDEFINED:
-            case AmfTypes.AMF0_UNSUPPORTED:
+            case START_TYPED_OBJECT:
+                return readTypedObject();
+            
+            case NULL:
+            case UNDEFINED:
+            case UNSUPPORTED:
                 return null;
                 
-            case AmfTypes.AMF0_REFERENCE:
+            case REFERENCE:
                 return readReference();
                 
-            case AmfTypes.AMF0_ECMA_ARRAY:
-                return readEcmaArray();
-                
-            case AmfTypes.AMF0_STRICT_ARRAY:
-                return readStrictArray();
+            case START_ECMA_ARRAY:
+                return readEcmaArrayEntries();
                 
-            case AmfTypes.AMF0_DATE:
-                return readDate();
+            case START_STRICT_ARRAY:
+                return primitiveArrays ? readPrimitiveArray() : readStrictArrayElements();
                 
-            case AmfTypes.AMF0_LONG_STRING:
-                return readLongString();
+            case DATE:
+                return readDateValue();
                 
-            case AmfTypes.AMF0_XML_DOCUMENT:
-                return readXmlDocument();
-                
-            case AmfTypes.AMF0_TYPED_OBJECT:
-                throw new AmfException("Typed objects aren't supported yet");
+            case XML_DOCUMENT:
+                return readXml();
+            
+            case AVMPLUS_OBJECT:
+                return parser.getAmf3Value();
                 
             default:
-                throw new AmfException("Unsupported marker type: " + typeMarker);
+                throw new AmfException("Unexpected token: " + token);
         }
     }
     
     /**
-     * Read string
+     * Read object entries
      * @return 
+     * @throws AmfException
      */
-    private String readString() {
-        int size = data.getShort();
-        byte[] chars = new byte[size];
-        data.get(chars);
-        return new String(chars, StandardCharsets.UTF_8);
+    private Map readObjectEntries() throws AmfException {
+        CompactMap<String, Object> object = new CompactMap<>();
+        references.add(object);
+        while (parser.nextToken() == Amf0Token.KEY) {
+            String key = parser.getString();
+            object.put(key, read(parser.nextToken()));
+        }
+        object.trimToSize();
+        return object;
     }
     
     /**
-     * Read long string
-     * @return 
+     * Read typed object
+     * @return
+     * @throws AmfException 
      */
-    private String readLongString() {
-        int size = data.getInt();
-        byte[] chars = new byte[size];
-        data.get(chars);
-        return new String(chars, StandardCharsets.UTF_8);
+    private Object readTypedObject() throws AmfException {
+        if (null != classRegistry) {
+            Class<?> clazz = classRegistry.findClass(parser.getString());
+            if (null != clazz) {
+                return readBean(ClassCodec.forClass(clazz));
+            }
+        }
+        return readObjectEntries();
     }
     
     /**
-     * Read object
-     * @return 
-     * @throws AmfException
+     * Read object entries into the new class instance
+     * @param codec
+     * @return
+     * @throws AmfException 
      */
-    private Map readObject() throws AmfException {
-        Map<String, Object> object = new LinkedHashMap<>();
-        while (true) {
-            String key = readString();
-            byte dataType = data.get();
-            if (dataType == AmfTypes.AMF0_OBJECT_END) {
-                break;
+    private Object readBean(ClassCodec codec) throws AmfException {
+        Object bean = codec.newInstance();
+        references.add(bean);
+        while (parser.nextToken() == Amf0Token.KEY) {
+            ClassCodec.Property property = codec.getProperty(parser.getString());
+            if (null == property) {
+                read(parser.nextToken());
+            } else {
+                property.set(bean, read(parser.nextToken(), property.getType()));
             }
-            object.put(key, read(dataType));
         }
-        references.add(object);
-        return object;
+        return bean;
     }
     
     /**
@@ -160,13 +500,27 @@ public final class Amf0Reader {
      * @throws AmfException 
      */
     public Map readEcmaArray() throws AmfException {
-        long size = data.getInt();
-        Map<String, Object> array = new LinkedHashMap<>();
-        for (int i = 0; i < size; i++) {
-            String key = readString();
-            array.put(key, read());
-        }
+        startValue();
+        parser.nextToken(AmfTypes.AMF0_ECMA_ARRAY);
+        return readEcmaArrayEntries();
+    }
+    
+    /**
+     * Read ECMA array entries
+     * @return
+     * @throws AmfException 
+     */
+    private Map readEcmaArrayEntries() throws AmfException {
+        // Presize by declared count only as far as the data goes, entry takes
+        // at least 3 bytes
+        int size = (int) Math.min(parser.getCount(), parser.getBuffer().remaining() / 3);
+        CompactMap<String, Object> array = new CompactMap<>(size);
         references.add(array);
+        while (parser.nextToken() == Amf0Token.KEY) {
+            String key = parser.getString();
+            array.put(key, read(parser.nextToken()));
+        }
+        array.trimToSize();
         return array;
     }
     
@@ -176,24 +530,199 @@ public final class Amf0Reader {
      * @throws AmfException 
      */
     public List readStrictArray() throws AmfException {
-        long size = data.getInt();
+        startValue();
+        parser.nextToken(AmfTypes.AMF0_STRICT_ARRAY);
+        return readStrictArrayElements();
+    }
+    
+    /**
+     * Read strict array elements
+     * @return
+     * @throws AmfException 
+     */
+    private List readStrictArrayElements() throws AmfException {
+        List<Object> array = new ArrayList<>((int) Math.min(parser.getCount(), parser.getBuffer().remaining()));
+        references.add(array);
+        Amf0Token token;
+        while ((token = parser.nextToken()) != Amf0Token.END_STRICT_ARRAY) {
+            array.add(read(token));
+        }
+        return array;
+    }
+    
+    /**
+     * Read strict array elements into primitive array when all elements are
+     * numbers or all are booleans
+     * @return
+     * @throws AmfException 
+     */
+    private Object readPrimitiveArray() throws AmfException {
+        int index = references.size();
+        references.add(null);
+        // Declared count is trusted only as far as the data goes
+        long count = parser.getCount();
+        Amf0Token token = parser.nextToken();
         List<Object> array = new ArrayList<>();
-        for (int i = 0; i < size; i++) {
-            array.add(read());
+        if (token == Amf0Token.NUMBER) {
+            double[] numbers = new double[(int) Math.min(count, parser.getBuffer().remaining() / 9 + 1)];
+            int size = 0;
+            while (token == Amf0Token.NUMBER) {
+                if (size == numbers.length) {
+                    numbers = Arrays.copyOf(numbers, size * 2);
+                }
+                numbers[size++] = parser.getDouble();
+                token = parser.nextToken();
+            }
+            if (token == Amf0Token.END_STRICT_ARRAY) {
+                numbers = size == numbers.length ? numbers : Arrays.copyOf(numbers, size);
+                references.set(index, numbers);
+                return numbers;
+            }
+            for (int i = 0; i < size; i++) {
+                array.add(numbers[i]);
+            }
+        } else if (token == Amf0Token.BOOLEAN) {
+            boolean[] booleans = new boolean[(int) Math.min(count, parser.getBuffer().remaining() / 2 + 1)];
+            int size = 0;
+            while (token == Amf0Token.BOOLEAN) {
+                if (size == booleans.length) {
+                    booleans = Arrays.copyOf(booleans, size * 2);
+                }
+                booleans[size++] = parser.getBoolean();
+                token = parser.nextToken();
+            }
+            if (token == Amf0Token.END_STRICT_ARRAY) {
+                booleans = size == booleans.length ? booleans : Arrays.copyOf(booleans, size);
+                references.set(index, booleans);
+                return booleans;
+            }
+            for (int i = 0; i < size; i++) {
+                array.add(booleans[i]);
+            }
+        }
+        // Mixed or empty array
+        references.set(index, array);
+        while (token != Amf0Token.END_STRICT_ARRAY) {
+            array.add(read(token));
+            token = parser.nextToken();
         }
-        references.add(array);
         return array;
     }
     
+    /**
+     * Skip AMF data started by the current token
+     * @throws AmfException 
+     */
+    private void skipCurrent() throws AmfException {
+        for (int i = parser.skipValue(); i > 0; i--) {
+            references.add(SKIPPED);
+        }
+    }
+    
+    /**
+     * Walk the next AMF data down the path
+     * @param path
+     * @return token of the found value or null
+     * @throws AmfException 
+     */
+    private Amf0Token locate(String[] path) throws AmfException {
+        startValue();
+        valueStart = parser.position();
+        Amf0Token token = parser.nextToken();
+        if (null == token) {
+            throw new AmfException("Unexpected end of data");
+        }
+        for (String name : path) {
+            switch (token) {
+                case START_OBJECT:
+                case START_TYPED_OBJECT:
+                case START_ECMA_ARRAY:
+                    references.add(SKIPPED);
+                    token = locateKey(name);
+                    break;
+                case START_STRICT_ARRAY:
+                    references.add(SKIPPED);
+                    token = locateElement(name);
+                    break;
+                default:
+                    skipCurrent();
+                    return null;
+            }
+            if (null == token) {
+                return null;
+            }
+        }
+        return token;
+    }
+    
+    /**
+     * Skip entries of the current object till the key
+     * @param name
+     * @return token of the key value or null
+     * @throws AmfException 
+     */
+    private Amf0Token locateKey(String name) throws AmfException {
+        while (parser.nextToken() == Amf0Token.KEY) {
+            if (parser.keyEquals(name)) {
+                valueStart = parser.position();
+                return parser.nextToken();
+            }
+            parser.nextToken();
+            skipCurrent();
+        }
+        return null;
+    }
+    
+    /**
+     * Skip elements of the current strict array till the index
+     * @param name
+     * @return token of the element or null
+     * @throws AmfException 
+     */
+    private Amf0Token locateElement(String name) throws AmfException {
+        int index;
+        try {
+            index = Integer.parseInt(name);
+        } catch (NumberFormatException ex) {
+            index = -1;
+        }
+        for (int i = 0;; i++) {
+            valueStart = parser.position();
+            Amf0Token token = parser.nextToken();
+            if (token == Amf0Token.END_STRICT_ARRAY) {
+                return null;
+            }
+            if (i == index) {
+                return token;
+            }
+            skipCurrent();
+        }
+    }
+    
+    /**
+     * Skip the rest of the open containers
+     * @throws AmfException 
+     */
+    private void skipRemaining() throws AmfException {
+        while (parser.getDepth() > 0) {
+            parser.nextToken();
+            skipCurrent();
+        }
+    }
+    
     /**
      * Read reference
      * @return
      * @throws AmfException 
      */
     private Object readReference() throws AmfException {
-        int key = data.getShort();
-        if (references.size() < key) {
-            return references.get(key);
+        int key = parser.getReference();
+        if (key < references.size()) {
+            Object value = references.get(key);
+            if (value == SKIPPED) {
+                throw new AmfException("Reference to skipped value: " + key);
+            }
+            return value;
         }
         throw new AmfException("Invalid reference key: " + key);
     }
@@ -202,11 +731,69 @@ public final class Amf0Reader {
      * Read date
      * @return 
      */
-    public Date readDate() {
-        Date date = new Date((long) data.getDouble());
+    public Date readDate() throws AmfException {
+        parser.nextToken(AmfTypes.AMF0_DATE);
         // Ignore reserved and unsupported timezone
-        data.getShort();
-        return date;
+        return parser.getDate();
+    }
+    
+    /**
+     * Read date as milliseconds since epoch without allocation
+     * @return
+     * @throws AmfException 
+     */
+    public long readEpochMillis() throws AmfException {
+        parser.nextToken(AmfTypes.AMF0_DATE);
+        return parser.getEpochMillis();
+    }
+    
+    /**
+     * Read date as instant
+     * @return
+     * @throws AmfException 
+     */
+    public Instant readInstant() throws AmfException {
+        parser.nextToken(AmfTypes.AMF0_DATE);
+        return parser.getInstant();
+    }
+    
+    /**
+     * Read date according to the mode
+     * @return 
+     */
+    private Object readDateValue() {
+        switch (dateMode) {
+            case EPOCH_MILLIS:
+                return parser.getEpochMillis();
+            
+            case INSTANT:
+                return parser.getInstant();
+            
+            default:
+                return parser.getDate();
+        }
+    }
+    
+    /**
+     * Read XML document according to the mode
+     * @return
+     * @throws AmfException 
+     */
+    private Object readXml() throws AmfException {
+        switch (xmlMode) {
+            case STRING:
+                return parser.getString();
+            
+            case LAZY:
+                byte[] bytes = new byte[parser.getStringLength()];
+                ByteBuffer slice = parser.getBuffer().duplicate();
+                slice.position(parser.getStringOffset());
+                slice.get(bytes);
+                return new XmlDocument(bytes);
+            
+            default:
+                return Xml.parse(parser.getBuffer(), parser.getStringOffset(), parser.getStringLength());
+        }
     }
     
     /**
@@ -215,15 +802,8 @@ public final class Amf0Reader {
      * @throws AmfException 
      */
     public Document readXmlDocument() throws AmfException {
-        String xml = readLongString();
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        try {
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            InputSource is = new InputSource(new StringReader(xml));
-            return builder.parse(is);
-        } catch (ParserConfigurationException | SAXException | IOException ex) {
-            throw new AmfException("Can't parse xml document", ex);
-        }
+        parser.nextToken(AmfTypes.AMF0_XML_DOCUMENT);
+        return Xml.parse(parser.getBuffer(), parser.getStringOffset(), parser.getStringLength());
     }
     
 }
@@ -0,0 +1,213 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pre-compiled AMF0 message template
+ * 
+ * Values are encoded once with slots left for the changing parts. Writing
+ * the template copies the encoded segments and writes only the slot values.
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public final class Amf0Template {
+    
+    /**
+     * Template slot placeholder
+     */
+    public static final class Slot {
+        
+        private final String name;
+        
+        private Slot(String name) {
+            this.name = name;
+        }
+        
+        public String getName() {
+            return name;
+        }
+    
+    }
+    
+    /**
+     * Slots collector used by writer while compiling
+     */
+    static final class Compiler {
+        
+        private List<String> names = new ArrayList<>();
+        
+        private List<Integer> offsets = new ArrayList<>();
+        
+        private List<Integer> referenceCounts = new ArrayList<>();
+        
+        private List<Integer> values = new ArrayList<>();
+        
+        private int value = -1;
+        
+        private boolean shared;
+        
+        /**
+         * Start next top level value
+         */
+        void value() {
+            value++;
+        }
+        
+        /**
+         * Add slot
+         * @param slot
+         * @param offset
+         * @param referenceCount objects and arrays before slot in its top
+         * level value
+         */
+        void slot(Slot slot, int offset, int referenceCount) {
+            names.add(slot.getName());
+            offsets.add(offset);
+            referenceCounts.add(referenceCount);
+            values.add(value);
+        }
+        
+        /**
+         * Mark that value was written as a reference
+         */
+        void reference() {
+            shared = true;
+        }
+    
+    }
+    
+    private final byte[] data;
+    
+    private final String[] names;
+    
+    private final int[] offsets;
+    
+    // Objects and arrays before each slot in its top level value
+    private final int[] referenceCounts;
+    
+    // Top level value of each slot
+    private final int[] values;
+    
+    /**
+     * Class constructor
+     * @param data
+     * @param compiler 
+     */
+    private Amf0Template(byte[] data, Compiler compiler) {
+        this.data = data;
+        this.names = compiler.names.toArray(new String[compiler.names.size()]);
+        this.offsets = new int[names.length];
+        this.referenceCounts = new int[names.length];
+        this.values = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            offsets[i] = compiler.offsets.get(i);
+            referenceCounts[i] = compiler.referenceCounts.get(i);
+            values[i] = compiler.values.get(i);
+        }
+    }
+    
+    /**
+     * Create slot placeholder
+     * @param name
+     * @return 
+     */
+    public static Slot slot(String name) {
+        return new Slot(name);
+    }
+    
+    /**
+     * Compile values containing slot placeholders. Objects and arrays must not
+     * be shared since references can't be resolved in advance.
+     * @param values
+     * @return
+     * @throws IOException
+     * @throws AmfException 
+     */
+    public static Amf0Template compile(Object... values) throws IOException, AmfException {
+        return compile(null, values);
+    }
+    
+    /**
+     * Compile values containing slot placeholders
+     * @param classRegistry registry of typed object classes
+     * @param values
+     * @return
+     * @throws IOException
+     * @throws AmfException 
+     */
+    public static Amf0Template compile(ClassAliasRegistry classRegistry, Object... values) throws IOException, AmfException {
+        Compiler compiler = new Compiler();
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.setClassRegistry(classRegistry);
+            writer.setTemplateCompiler(compiler);
+            for (Object value : values) {
+                compiler.value();
+                writer.write(value);
+            }
+            if (compiler.shared) {
+                throw new AmfException("Template values must not contain shared objects");
+            }
+            return new Amf0Template(writer.getBytes(), compiler);
+        }
+    }
+    
+    /**
+     * Get slot names in the order of slot values
+     * @return 
+     */
+    public List<String> getSlotNames() {
+        return Arrays.asList(names.clone());
+    }
+    
+    /**
+     * Get number of slots
+     * @return 
+     */
+    public int getSlotCount() {
+        return names.length;
+    }
+    
+    /**
+     * Get encoded data
+     * @return 
+     */
+    byte[] getData() {
+        return data;
+    }
+    
+    /**
+     * Get offset of slot in the encoded data
+     * @param slot
+     * @return 
+     */
+    int getOffset(int slot) {
+        return offsets[slot];
+    }
+    
+    /**
+     * Get number of objects and arrays before slot in its top level value
+     * @param slot
+     * @return 
+     */
+    int getReferenceCount(int slot) {
+        return referenceCounts[slot];
+    }
+    
+    /**
+     * Get index of the top level value containing slot
+     * @param slot
+     * @return 
+     */
+    int getValue(int slot) {
+        return values[slot];
+    }
+
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+/**
+ * AMF0 parser tokens
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public enum Amf0Token {
+    
+    // Scalar values
+    NUMBER,
+    BOOLEAN,
+    STRING,
+    NULL,
+    UNDEFINED,
+    UNSUPPORTED,
+    REFERENCE,
+    DATE,
+    XML_DOCUMENT,
+    AVMPLUS_OBJECT,
+    
+    // Containers
+    START_OBJECT,
+    START_TYPED_OBJECT,
+    START_ECMA_ARRAY,
+    START_STRICT_ARRAY,
+    KEY,
+    END_OBJECT,
+    END_ECMA_ARRAY,
+    END_STRICT_ARRAY,
+    
+    // Incremental parsing
+    NEED_MORE_INPUT
+
+}
@@ -5,43 +5,114 @@
  */
 package com.hwdmedia.amf;
 
-import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.StringWriter;
-import java.lang.reflect.Array;
-import java.lang.reflect.Field;
+import java.io.UTFDataFormatException;
 import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.Map;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 import org.w3c.dom.Document;
 
 /**
  * AMF0 Writer
  * 
+ * Object references are scoped to one top level value, so values written
+ * by separate write() calls are independent of each other.
+ * 
  * @author Gennadiy Kozlenko
  */
 public final class Amf0Writer implements Closeable {
     
-    private ByteArrayOutputStream bout;
+    private static final int MAX_REFERENCE = 0xFFFF;
+    
+    private AmfOutput out;
+    
+    private ClassAliasRegistry classRegistry;
+    
+    private Amf3Writer amf3Writer;
+    
+    private boolean amf3;
+    
+    private Map<Object, Integer> references = new IdentityHashMap<>();
+    
+    private int referenceCount;
     
-    private DataOutputStream out;
+    // Collector of template slots, null unless compiling template
+    private Amf0Template.Compiler templateCompiler;
+    
+    private Amf0EncodeCache encodeCache;
+    
+    private AmfMetrics metrics;
     
     /**
      * Class constructor
      */
     public Amf0Writer() {
-        bout = new ByteArrayOutputStream();
-        out = new DataOutputStream(bout);
+        out = new AmfOutput();
+    }
+    
+    /**
+     * Class constructor. Data is written into the buffer starting from its
+     * current position. When the buffer is full it's replaced by a larger
+     * one of the same kind, so the result must be taken by getByteBuffer().
+     * @param buffer 
+     */
+    public Amf0Writer(ByteBuffer buffer) {
+        out = new AmfOutput(buffer);
+    }
+    
+    /**
+     * Class constructor. Buffers are borrowed from the pool and returned
+     * back on grow and on close.
+     * @param pool 
+     */
+    public Amf0Writer(ByteBufferPool pool) {
+        out = new AmfOutput(pool);
+    }
+    
+    /**
+     * Set registry of typed object classes. Objects of registered classes
+     * are written as typed objects.
+     * @param classRegistry 
+     */
+    public void setClassRegistry(ClassAliasRegistry classRegistry) {
+        this.classRegistry = classRegistry;
+        if (null != amf3Writer) {
+            amf3Writer.setClassRegistry(classRegistry);
+        }
+    }
+    
+    /**
+     * Set AMF3 mode. In AMF3 mode every value is written in AMF3 format after
+     * the avmplus object marker.
+     * @param amf3 
+     */
+    public void setAmf3(boolean amf3) {
+        this.amf3 = amf3;
+    }
+    
+    /**
+     * Set cache of encoded immutable values, may be shared by writers.
+     * Without cache immutable values are encoded every time.
+     * @param encodeCache 
+     */
+    public void setEncodeCache(Amf0EncodeCache encodeCache) {
+        this.encodeCache = encodeCache;
+    }
+    
+    /**
+     * Set metrics of written values, null to disable
+     * @param metrics 
+     */
+    public void setMetrics(AmfMetrics metrics) {
+        this.metrics = metrics;
     }
     
     /**
@@ -49,7 +120,28 @@ public final class Amf0Writer implements Closeable {
      * @param value 
      */
     public void write(Object value) throws IOException, AmfException {
-        if (null != value) {
+        resetReferences();
+        int start = out.size();
+        long time = startEncoding();
+        try {
+            writeValue(value);
+        } catch (IOException | AmfException | RuntimeException ex) {
+            encodeFailed(ex);
+            throw ex;
+        }
+        encoded(start, time);
+    }
+    
+    /**
+     * Write value
+     * @param value
+     * @throws IOException
+     * @throws AmfException 
+     */
+    private void writeValue(Object value) throws IOException, AmfException {
+        if (amf3) {
+            writeAvmPlus(value);
+        } else if (null != value) {
             if (value instanceof Number) {
                 writeDouble(((Number) value).doubleValue());
             } else if (value instanceof Boolean) {
@@ -57,21 +149,36 @@ public final class Amf0Writer implements Closeable {
             } else if (value instanceof String) {
                 writeString((String) value);
             } else if (value instanceof Date) {
-                writeDate((Date) value);
+                writeDate(((Date) value).getTime());
             } else if (value instanceof Calendar) {
-                writeDate(((Calendar) value).getTime());
+                writeDate(((Calendar) value).getTimeInMillis());
+            } else if (value instanceof Instant) {
+                writeDate(((Instant) value).toEpochMilli());
+            } else if (value instanceof OffsetDateTime) {
+                writeDate(((OffsetDateTime) value).toInstant().toEpochMilli());
+            } else if (value instanceof ZonedDateTime) {
+                writeDate(((ZonedDateTime) value).toInstant().toEpochMilli());
             } else if (value instanceof Document) {
                 writeXmlDocument((Document) value);
+            } else if (value instanceof XmlDocument) {
+                writeXmlDocument((XmlDocument) value);
             } else {
                 Class clazz = value.getClass();
                 if (clazz.isArray()) {
-                    if (clazz.isPrimitive()) {
+                    Class componentType = clazz.getComponentType();
+                    if (componentType.isPrimitive()) {
                         writePrimitiveArray(value);
-                    } else if (clazz.equals(Character.class)) {
+                    } else if (componentType.equals(Character.class)) {
                         writeCharsArrayAsString((Character[]) value);
                     } else {
                         writeObjectsArray((Object[]) value);
                     }
+                } else if (value instanceof Amf0Template.Slot) {
+                    writeSlot((Amf0Template.Slot) value);
+                } else if (value instanceof LazyAmf0Value) {
+                    writeLazyValue((LazyAmf0Value) value);
+                } else if (value instanceof Amf0EncodeCache.Value) {
+                    writeImmutable((Amf0EncodeCache.Value) value);
                 } else if (value instanceof Map) {
                     writeEcmaArray((Map) value);
                 } else if (value instanceof Collection) {
@@ -81,8 +188,97 @@ public final class Amf0Writer implements Closeable {
                 }
             }
         } else {
-            out.write(AmfTypes.AMF0_NULL);
+            out.put(AmfTypes.AMF0_NULL);
+        }
+    }
+    
+    /**
+     * Write pre-compiled template. Metrics count the template as one value.
+     * @param template
+     * @param values slot values in the order of template slots
+     * @throws IOException
+     * @throws AmfException 
+     */
+    public void write(Amf0Template template, Object... values) throws IOException, AmfException {
+        int start = out.size();
+        long time = startEncoding();
+        try {
+            writeTemplate(template, values);
+        } catch (IOException | AmfException | RuntimeException ex) {
+            encodeFailed(ex);
+            throw ex;
+        }
+        encoded(start, time);
+    }
+    
+    /**
+     * Write template data and slot values
+     * @param template
+     * @param values
+     * @throws IOException
+     * @throws AmfException 
+     */
+    private void writeTemplate(Amf0Template template, Object... values) throws IOException, AmfException {
+        int slots = template.getSlotCount();
+        if (values.length != slots) {
+            throw new AmfException("Template expects " + slots + " values, got " + values.length);
+        }
+        byte[] data = template.getData();
+        int offset = 0;
+        int count = 0;
+        int value = -1;
+        for (int i = 0; i < slots; i++) {
+            int end = template.getOffset(i);
+            out.put(data, offset, end - offset);
+            if (template.getValue(i) != value) {
+                value = template.getValue(i);
+                resetReferences();
+                count = 0;
+            }
+            // Objects and arrays of the template take reference indexes too
+            referenceCount += template.getReferenceCount(i) - count;
+            count = template.getReferenceCount(i);
+            offset = end;
+            writeValue(values[i]);
         }
+        out.put(data, offset, data.length - offset);
+        resetReferences();
+    }
+    
+    /**
+     * Write AMF3 data after the avmplus object marker. AMF3 reference tables
+     * are scoped to the value as AMF0 ones.
+     * @param value
+     * @throws IOException
+     * @throws AmfException 
+     */
+    public void writeAmf3(Object value) throws IOException, AmfException {
+        resetReferences();
+        int start = out.size();
+        long time = startEncoding();
+        try {
+            writeAvmPlus(value);
+        } catch (IOException | AmfException | RuntimeException ex) {
+            encodeFailed(ex);
+            throw ex;
+        }
+        encoded(start, time);
+    }
+    
+    /**
+     * Write avmplus object marker and AMF3 value with own reference tables
+     * @param value
+     * @throws IOException
+     * @throws AmfException 
+     */
+    private void writeAvmPlus(Object value) throws IOException, AmfException {
+        if (null == amf3Writer) {
+            amf3Writer = new Amf3Writer(out);
+            amf3Writer.setClassRegistry(classRegistry);
+        }
+        amf3Writer.resetReferences();
+        out.put(AmfTypes.AMF0_AVMPLUS_OBJECT);
+        amf3Writer.write(value);
     }
     
     /**
@@ -90,15 +286,46 @@ public final class Amf0Writer implements Closeable {
      * @return 
      */
     public byte[] getBytes() {
-        return bout.toByteArray();
+        byte[] bytes = new byte[size()];
+        getByteBuffer().get(bytes);
+        return bytes;
     }
     
     /**
-     * Get ByteBuffer of AFM data
+     * Get ByteBuffer of AFM data. Returned buffer shares content with the
+     * writer, so no data is copied. It's valid until the next write, reset
+     * or close of the pooled writer.
      * @return 
      */
     public ByteBuffer getByteBuffer() {
-        return ByteBuffer.wrap(getBytes());
+        return out.getByteBuffer();
+    }
+    
+    /**
+     * Get size of AMF data
+     * @return 
+     */
+    public int size() {
+        return out.size();
+    }
+    
+    /**
+     * Set collector of template slots
+     * @param templateCompiler 
+     */
+    void setTemplateCompiler(Amf0Template.Compiler templateCompiler) {
+        this.templateCompiler = templateCompiler;
+    }
+    
+    /**
+     * Discard written data to reuse the writer
+     */
+    public void reset() {
+        out.reset();
+        resetReferences();
+        if (null != amf3Writer) {
+            amf3Writer.resetReferences();
+        }
     }
 
     /**
@@ -107,7 +334,83 @@ public final class Amf0Writer implements Closeable {
      */
     @Override
     public void close() throws IOException {
-        out.close();
+        out.release();
+    }
+    
+    /**
+     * Get start time of measured top level value
+     * @return 
+     */
+    private long startEncoding() {
+        return null == metrics ? 0 : System.nanoTime();
+    }
+    
+    /**
+     * Report top level value written from the offset
+     * @param start
+     * @param time 
+     */
+    private void encoded(int start, long time) {
+        if (null != metrics && out.size() > start) {
+            metrics.encoded(out.get(start), out.size() - start, System.nanoTime() - time);
+        }
+    }
+    
+    /**
+     * Report failure of top level value
+     * @param error 
+     */
+    private void encodeFailed(Exception error) {
+        if (null != metrics) {
+            metrics.encodeFailed(error);
+        }
+    }
+    
+    /**
+     * Drop references of the previous top level value
+     */
+    private void resetReferences() {
+        if (referenceCount > 0) {
+            references.clear();
+            referenceCount = 0;
+        }
+    }
+    
+    /**
+     * Write reference if value was already written. Objects, ECMA and strict
+     * arrays are counted in the same order as reader registers them.
+     * @param value
+     * @return true if reference was written
+     */
+    private boolean writeReference(Object value) {
+        Integer index = references.get(value);
+        if (null != index) {
+            if (null != templateCompiler) {
+                templateCompiler.reference();
+            }
+            out.ensure(3).put(AmfTypes.AMF0_REFERENCE).putShort((short) index.intValue());
+            return true;
+        }
+        if (referenceCount <= MAX_REFERENCE) {
+            references.put(value, referenceCount);
+        }
+        referenceCount++;
+        return false;
+    }
+    
+    /**
+     * Write UTF string without type marker, max 65535 bytes
+     * @param value
+     * @throws IOException 
+     */
+    private void writeUTF(String value) throws IOException {
+        long utflen = Utf8.encodedLength(value);
+        if (utflen > 0xFFFF) {
+            throw new UTFDataFormatException("Encoded string too long: " + utflen + " bytes");
+        }
+        ByteBuffer buffer = out.ensure(2 + (int) utflen);
+        buffer.putShort((short) utflen);
+        Utf8.encode(value, buffer);
     }
     
     /**
@@ -115,8 +418,9 @@ public final class Amf0Writer implements Closeable {
      * @param value 
      */
     private void writeDouble(double value) throws IOException {
-        out.write(AmfTypes.AMF0_NUMBER);
-        out.writeDouble(value);
+        ByteBuffer buffer = out.ensure(9);
+        buffer.put(AmfTypes.AMF0_NUMBER);
+        buffer.putDouble(value);
     }
     
     /**
@@ -124,8 +428,9 @@ public final class Amf0Writer implements Closeable {
      * @param value 
      */
     private void writeBoolean(boolean value) throws IOException {
-        out.write(AmfTypes.AMF0_BOOLEAN);
-        out.writeBoolean(value);
+        ByteBuffer buffer = out.ensure(2);
+        buffer.put(AmfTypes.AMF0_BOOLEAN);
+        buffer.put((byte) (value ? 1 : 0));
     }
     
     /**
@@ -133,72 +438,47 @@ public final class Amf0Writer implements Closeable {
      * @param value 
      */
     private void writeString(String value) throws IOException {
-        int strlen = value.length();
-        int utflen = 0;
-        int c;
-        
-        char[] charr = new char[strlen];
-        value.getChars(0, strlen, charr, 0);
-        
-        for (int i = 0; i < strlen; i++) {
-            c = charr[i];
-            if (c <= 0x007F) {
-                utflen++;
-            } else if (c > 0x07FF) {
-                utflen += 3;
-            } else {
-                utflen += 2;
-            }
-        }
-        
-        byte type;
-        int size;
-        if (utflen <= 65535) {
-            type = AmfTypes.AMF0_STRING;
-            size = utflen + 3;
+        long utflen = Utf8.encodedLength(value);
+        ByteBuffer buffer;
+        if (utflen <= 0xFFFF) {
+            buffer = out.ensure(3 + (int) utflen);
+            buffer.put(AmfTypes.AMF0_STRING);
+            buffer.putShort((short) utflen);
         } else {
-            type = AmfTypes.AMF0_LONG_STRING;
-            size = utflen + 5;
+            buffer = writeLongStringHeader(AmfTypes.AMF0_LONG_STRING, utflen);
         }
-        
-        byte[] bytearr = new byte[size];
-        
-        int count = 0;
-        bytearr[count++] = (byte)(type);
-        
-        if (type == AmfTypes.AMF0_LONG_STRING) {
-            bytearr[count++] = (byte) ((utflen >>> 24) & 0xFF);
-            bytearr[count++] = (byte) ((utflen >>> 16) & 0xFF);
-        }
-        bytearr[count++] = (byte) ((utflen >>> 8) & 0xFF);
-        bytearr[count++] = (byte) ((utflen) & 0xFF);
-        
-        for (int i = 0; i < strlen; i++) {
-            c = charr[i];
-            if (c <= 0x007F) {
-                bytearr[count++] = (byte) c;
-            } else if (c > 0x07FF) {
-                bytearr[count++] = (byte) (0xE0 | ((c >> 12) & 0x0F));
-                bytearr[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
-                bytearr[count++] = (byte) (0x80 | ((c) & 0x3F));
-            } else {
-                bytearr[count++] = (byte) (0xC0 | ((c >> 6) & 0x1F));
-                bytearr[count++] = (byte) (0x80 | ((c) & 0x3F));
-            }
+        Utf8.encode(value, buffer);
+    }
+    
+    /**
+     * Write long string type marker and length and reserve space for the
+     * string
+     * @param type
+     * @param utflen
+     * @return buffer to encode the string to
+     * @throws IOException 
+     */
+    private ByteBuffer writeLongStringHeader(byte type, long utflen) throws IOException {
+        if (utflen > Integer.MAX_VALUE - 5) {
+            throw new UTFDataFormatException("Encoded string too long: " + utflen + " bytes");
         }
-        out.write(bytearr, 0, count);
+        ByteBuffer buffer = out.ensure(5 + (int) utflen);
+        buffer.put(type);
+        buffer.putInt((int) utflen);
+        return buffer;
     }
     
     /**
      * Write date
-     * @param value
+     * @param millis milliseconds since epoch
      * @throws IOException 
      */
-    private void writeDate(Date value) throws IOException {
-        out.write(AmfTypes.AMF0_DATE);
-        out.writeDouble(value.getTime());
+    private void writeDate(long millis) throws IOException {
+        ByteBuffer buffer = out.ensure(11);
+        buffer.put(AmfTypes.AMF0_DATE);
+        buffer.putDouble(millis);
         // Timezone is reserved and unsupported
-        out.writeShort(0);
+        buffer.putShort((short) 0);
     }
     
     /**
@@ -210,25 +490,73 @@ public final class Amf0Writer implements Closeable {
         Class aType = value.getClass().getComponentType();
         if (aType.equals(Character.TYPE)) {
             writeString(new String((char[]) value));
-        } else {
+        } else if (!writeReference(value)) {
             if (aType.equals(Boolean.TYPE)) {
-                out.write(AmfTypes.AMF0_STRICT_ARRAY);
                 boolean[] b = (boolean[]) value;
-                out.writeInt(b.length);
+                ByteBuffer buffer = writeArrayHeader(b.length, 2);
                 for (int i = 0; i < b.length; i++) {
-                    writeBoolean(b[i]);
+                    buffer.put(AmfTypes.AMF0_BOOLEAN);
+                    buffer.put((byte) (b[i] ? 1 : 0));
+                }
+            } else if (aType.equals(Double.TYPE)) {
+                double[] d = (double[]) value;
+                ByteBuffer buffer = writeArrayHeader(d.length, 9);
+                for (int i = 0; i < d.length; i++) {
+                    buffer.put(AmfTypes.AMF0_NUMBER);
+                    buffer.putDouble(d[i]);
+                }
+            } else if (aType.equals(Integer.TYPE)) {
+                int[] n = (int[]) value;
+                ByteBuffer buffer = writeArrayHeader(n.length, 9);
+                for (int i = 0; i < n.length; i++) {
+                    buffer.put(AmfTypes.AMF0_NUMBER);
+                    buffer.putDouble(n[i]);
+                }
+            } else if (aType.equals(Long.TYPE)) {
+                long[] l = (long[]) value;
+                ByteBuffer buffer = writeArrayHeader(l.length, 9);
+                for (int i = 0; i < l.length; i++) {
+                    buffer.put(AmfTypes.AMF0_NUMBER);
+                    buffer.putDouble(l[i]);
+                }
+            } else if (aType.equals(Float.TYPE)) {
+                float[] f = (float[]) value;
+                ByteBuffer buffer = writeArrayHeader(f.length, 9);
+                for (int i = 0; i < f.length; i++) {
+                    buffer.put(AmfTypes.AMF0_NUMBER);
+                    buffer.putDouble(f[i]);
+                }
+            } else if (aType.equals(Short.TYPE)) {
+                short[] s = (short[]) value;
+                ByteBuffer buffer = writeArrayHeader(s.length, 9);
+                for (int i = 0; i < s.length; i++) {
+                    buffer.put(AmfTypes.AMF0_NUMBER);
+                    buffer.putDouble(s[i]);
                 }
             } else {
-                out.write(AmfTypes.AMF0_STRICT_ARRAY);
-                int length = Array.getLength(value);
-                out.writeInt(length);
-                for (int i = 0; i < length; i++) {
-                    writeDouble(Array.getDouble(value, i));
+                byte[] b = (byte[]) value;
+                ByteBuffer buffer = writeArrayHeader(b.length, 9);
+                for (int i = 0; i < b.length; i++) {
+                    buffer.put(AmfTypes.AMF0_NUMBER);
+                    buffer.putDouble(b[i]);
                 }
             }
         }
     }
     
+    /**
+     * Write strict array header and reserve space for the elements
+     * @param length
+     * @param elementSize encoded size of an element
+     * @return buffer to put the elements to
+     */
+    private ByteBuffer writeArrayHeader(int length, int elementSize) {
+        ByteBuffer buffer = out.ensure(5 + (int) Math.min((long) length * elementSize, Integer.MAX_VALUE - 5));
+        buffer.put(AmfTypes.AMF0_STRICT_ARRAY);
+        buffer.putInt(length);
+        return buffer;
+    }
+    
     /**
      * Write chars array as string
      * @param value
@@ -254,11 +582,14 @@ public final class Amf0Writer implements Closeable {
      * @throws IOException 
      */
     private void writeObjectsArray(Object[] values) throws IOException, AmfException {
-        out.write(AmfTypes.AMF0_STRICT_ARRAY);
-        out.writeInt(values.length);
+        if (writeReference(values)) {
+            return;
+        }
+        out.put(AmfTypes.AMF0_STRICT_ARRAY);
+        out.putInt(values.length);
         for (int i = 0; i < values.length; i++) {
             Object item = values[i];
-            write(item);
+            writeValue(item);
         }
     }
     
@@ -268,15 +599,98 @@ public final class Amf0Writer implements Closeable {
      * @throws IOException 
      */
     private void writeEcmaArray(Map value) throws IOException, AmfException {
-        out.write(AmfTypes.AMF0_ECMA_ARRAY);
-        out.writeInt(value.size());
+        if (writeReference(value)) {
+            return;
+        }
+        out.put(AmfTypes.AMF0_ECMA_ARRAY);
+        out.putInt(value.size());
         Iterator it = value.keySet().iterator();
         while (it.hasNext()) {
             Object k = it.next();
             Object v = value.get(k);
-            out.writeUTF(k.toString());
-            write(v);
+            writeUTF(k.toString());
+            writeValue(v);
         }
+        // End array
+        out.ensure(3).putShort((short) 0).put(AmfTypes.AMF0_OBJECT_END);
+    }
+    
+    /**
+     * Write template slot
+     * @param slot
+     * @throws AmfException 
+     */
+    private void writeSlot(Amf0Template.Slot slot) throws AmfException {
+        if (null == templateCompiler) {
+            throw new AmfException("Template slot " + slot.getName() + " outside of template");
+        }
+        templateCompiler.slot(slot, out.size(), referenceCount);
+    }
+    
+    /**
+     * Write lazy view, self-contained views are copied as raw bytes
+     * @param value
+     * @throws IOException 
+     */
+    private void writeLazyValue(LazyAmf0Value value) throws IOException, AmfException {
+        ByteBuffer raw = value.getRawBytes();
+        if (null == raw) {
+            if (value instanceof Map) {
+                writeEcmaArray((Map) value);
+            } else {
+                writeCollection((Collection) value);
+            }
+            return;
+        }
+        if (writeReference(value)) {
+            return;
+        }
+        // Nested objects and arrays take reference indexes too
+        referenceCount += value.getComplexCount() - 1;
+        out.ensure(raw.remaining()).put(raw);
+    }
+    
+    /**
+     * Write immutable value, cached values are copied as raw bytes
+     * @param value
+     * @throws IOException
+     * @throws AmfException 
+     */
+    private void writeImmutable(Amf0EncodeCache.Value value) throws IOException, AmfException {
+        if (null == encodeCache) {
+            writeValue(value.getValue());
+            return;
+        }
+        Amf0EncodeCache.Entry entry = encodeCache.get(value);
+        if (null == entry) {
+            byte[] encoded;
+            try (Amf0Writer writer = new Amf0Writer()) {
+                writer.setClassRegistry(classRegistry);
+                writer.write(value.getValue());
+                encoded = writer.getBytes();
+            }
+            entry = Amf0EncodeCache.encode(encoded);
+            encodeCache.put(value, entry);
+            if (null == entry.getData() && referenceCount == 0) {
+                // Value starts the top level value, so its own reference
+                // indexes are valid here
+                out.put(encoded, 0, encoded.length);
+                return;
+            }
+        }
+        byte[] data = entry.getData();
+        if (null == data) {
+            writeValue(value.getValue());
+            return;
+        }
+        if (entry.getComplexCount() > 0) {
+            if (writeReference(value)) {
+                return;
+            }
+            // Nested objects and arrays take reference indexes too
+            referenceCount += entry.getComplexCount() - 1;
+        }
+        out.put(data, 0, data.length);
     }
     
     /**
@@ -285,12 +699,15 @@ public final class Amf0Writer implements Closeable {
      * @throws IOException 
      */
     private void writeCollection(Collection value) throws IOException, AmfException {
-        out.write(AmfTypes.AMF0_STRICT_ARRAY);
-        out.writeInt(value.size());
+        if (writeReference(value)) {
+            return;
+        }
+        out.put(AmfTypes.AMF0_STRICT_ARRAY);
+        out.putInt(value.size());
         Iterator it = value.iterator();
         while (it.hasNext()) {
             Object item = it.next();
-            write(item);
+            writeValue(item);
         }
     }
     
@@ -300,20 +717,25 @@ public final class Amf0Writer implements Closeable {
      * @throws IOException 
      */
     private void writeObject(Object value) throws IOException, AmfException {
-        out.write(AmfTypes.AMF0_OBJECT);
+        if (writeReference(value)) {
+            return;
+        }
         Class clazz = value.getClass();
-        for (Field field: clazz.getFields()) {
-            out.writeUTF(field.getName());
-            try {
-                write(field.get(value));
-            } catch (IllegalArgumentException | IllegalAccessException | IOException ignore) {
-                out.write(AmfTypes.AMF0_NULL);
-            }
+        byte[] alias = null == classRegistry ? null : classRegistry.getEncodedAlias(clazz);
+        if (null == alias) {
+            out.put(AmfTypes.AMF0_OBJECT);
+        } else {
+            out.put(AmfTypes.AMF0_TYPED_OBJECT);
+            out.put(alias, 0, alias.length);
+        }
+        ClassCodec codec = ClassCodec.forClass(clazz);
+        for (int i = 0, size = codec.size(); i < size; i++) {
+            byte[] name = codec.getEncodedName(i);
+            out.put(name, 0, name.length);
+            writeValue(codec.get(i, value));
         }
         // End object
-        out.write(0);
-        out.write(0);
-        out.write(AmfTypes.AMF0_OBJECT_END);
+        out.ensure(3).putShort((short) 0).put(AmfTypes.AMF0_OBJECT_END);
     }
     
     /**
@@ -323,19 +745,18 @@ public final class Amf0Writer implements Closeable {
      * @throws AmfException 
      */
     private void writeXmlDocument(Document value) throws IOException, AmfException {
-        out.write(AmfTypes.AMF0_XML_DOCUMENT);
-        DOMSource source = new DOMSource(value);
-        StringWriter writer = new StringWriter();
-        StreamResult result = new StreamResult(writer);
-        TransformerFactory transformerFactory = TransformerFactory.newInstance();
-        Transformer transformer;
-        try {
-            transformer = transformerFactory.newTransformer();
-            transformer.transform(source, result);
-        } catch (TransformerException ex) {
-            throw new AmfException("Can't transform xml document", ex);
-        }
-        out.writeUTF(writer.toString());
+        String xml = Xml.transform(value);
+        Utf8.encode(xml, writeLongStringHeader(AmfTypes.AMF0_XML_DOCUMENT, Utf8.encodedLength(xml)));
+    }
+    
+    /**
+     * Write XML document in its encoded form
+     * @param value
+     * @throws IOException 
+     */
+    private void writeXmlDocument(XmlDocument value) throws IOException {
+        byte[] bytes = value.getBytes();
+        writeLongStringHeader(AmfTypes.AMF0_XML_DOCUMENT, bytes.length).put(bytes);
     }
 
 }
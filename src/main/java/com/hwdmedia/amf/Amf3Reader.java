@@ -0,0 +1,667 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AMF3 Reader
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public final class Amf3Reader {
+    
+    private ByteBuffer data;
+    
+    private List<String> stringReferences = new ArrayList<>();
+    
+    private List<Object> objectReferences = new ArrayList<>();
+    
+    private List<Traits> traitsReferences = new ArrayList<>();
+    
+    private ClassAliasRegistry classRegistry;
+    
+    private int[] mark = new int[3];
+    
+    private DecodeLimits limits = DecodeLimits.UNLIMITED;
+    
+    private int depth;
+    
+    /**
+     * Class constructor
+     * @param data 
+     */
+    public Amf3Reader(ByteBuffer data) {
+        this.data = data;
+    }
+    
+    /**
+     * Class constructor
+     * @param data 
+     */
+    public Amf3Reader(byte[] data) {
+        this.data = ByteBuffer.wrap(data);
+    }
+    
+    /**
+     * Set registry of typed object classes. Typed objects of registered
+     * classes are read directly into class instances.
+     * @param classRegistry 
+     */
+    public void setClassRegistry(ClassAliasRegistry classRegistry) {
+        this.classRegistry = classRegistry;
+    }
+    
+    /**
+     * Set decoding limits
+     * @param limits 
+     */
+    public void setDecodeLimits(DecodeLimits limits) {
+        this.limits = limits;
+    }
+    
+    /**
+     * Check has next AMF data in buffer
+     * @return 
+     */
+    public boolean hasNext() {
+        return data.hasRemaining();
+    }
+    
+    /**
+     * Read AMF data
+     */
+    public Object read() throws AmfException {
+        return read(data.get());
+    }
+    
+    /**
+     * Read AMF data
+     * @param typeMarker
+     * @return 
+     */
+    public Object read(int typeMarker) throws AmfException {
+        if (depth >= limits.getMaxDepth()) {
+            throw new AmfException("Nesting too deep: " + (depth + 1));
+        }
+        depth++;
+        try {
+            return readValue(typeMarker);
+        } finally {
+            depth--;
+        }
+    }
+    
+    /**
+     * Read AMF data by type marker
+     * @param typeMarker
+     * @return
+     * @throws AmfException 
+     */
+    private Object readValue(int typeMarker) throws AmfException {
+        switch (typeMarker) {
+            case AmfTypes.AMF3_UNDEFINED:
+            case AmfTypes.AMF3_NULL:
+                return null;
+            
+            case AmfTypes.AMF3_FALSE:
+                return false;
+            
+            case AmfTypes.AMF3_TRUE:
+                return true;
+            
+            case AmfTypes.AMF3_INTEGER:
+                // Sign extend 29 bit integer
+                return (readU29() << 3) >> 3;
+            
+            case AmfTypes.AMF3_DOUBLE:
+                return data.getDouble();
+            
+            case AmfTypes.AMF3_STRING:
+                return readString();
+            
+            case AmfTypes.AMF3_XML_DOCUMENT:
+            case AmfTypes.AMF3_XML:
+                return readXml();
+            
+            case AmfTypes.AMF3_DATE:
+                return readDate();
+            
+            case AmfTypes.AMF3_ARRAY:
+                return readArray();
+            
+            case AmfTypes.AMF3_OBJECT:
+                return readObject();
+            
+            case AmfTypes.AMF3_BYTE_ARRAY:
+                return readByteArray();
+            
+            case AmfTypes.AMF3_VECTOR_INT:
+                return readIntVector();
+            
+            case AmfTypes.AMF3_VECTOR_UINT:
+                return readUintVector();
+            
+            case AmfTypes.AMF3_VECTOR_DOUBLE:
+                return readDoubleVector();
+            
+            case AmfTypes.AMF3_VECTOR_OBJECT:
+                return readObjectVector();
+            
+            case AmfTypes.AMF3_DICTIONARY:
+                return readDictionary();
+            
+            default:
+                throw new AmfException("Unsupported AMF3 marker type: " + typeMarker);
+        }
+    }
+    
+    /**
+     * Replace buffer keeping reference tables
+     * @param data 
+     */
+    void setBuffer(ByteBuffer data) {
+        this.data = data;
+    }
+    
+    /**
+     * Replace buffer dropping reference tables
+     * @param data 
+     */
+    void reset(ByteBuffer data) {
+        this.data = data;
+        resetReferences();
+        depth = 0;
+    }
+    
+    /**
+     * Drop reference tables
+     */
+    void resetReferences() {
+        stringReferences.clear();
+        objectReferences.clear();
+        traitsReferences.clear();
+    }
+    
+    /**
+     * Remember reference tables size
+     */
+    void mark() {
+        mark[0] = stringReferences.size();
+        mark[1] = objectReferences.size();
+        mark[2] = traitsReferences.size();
+    }
+    
+    /**
+     * Drop references added after the mark
+     */
+    void rollback() {
+        stringReferences.subList(mark[0], stringReferences.size()).clear();
+        objectReferences.subList(mark[1], objectReferences.size()).clear();
+        traitsReferences.subList(mark[2], traitsReferences.size()).clear();
+    }
+    
+    /**
+     * Read variable length 29 bit unsigned integer
+     * @return 
+     */
+    private int readU29() {
+        int b = data.get() & 0xFF;
+        if (b < 0x80) {
+            return b;
+        }
+        int value = (b & 0x7F) << 7;
+        b = data.get() & 0xFF;
+        if (b < 0x80) {
+            return value | b;
+        }
+        value = (value | (b & 0x7F)) << 7;
+        b = data.get() & 0xFF;
+        if (b < 0x80) {
+            return value | b;
+        }
+        value = (value | (b & 0x7F)) << 8;
+        return value | (data.get() & 0xFF);
+    }
+    
+    /**
+     * Read string
+     * @return
+     * @throws AmfException 
+     */
+    private String readString() throws AmfException {
+        int header = readU29();
+        if ((header & 1) == 0) {
+            int index = header >> 1;
+            if (index >= stringReferences.size()) {
+                throw new AmfException("Invalid string reference: " + index);
+            }
+            return stringReferences.get(index);
+        }
+        int length = header >> 1;
+        if (length == 0) {
+            return "";
+        }
+        String value = decodeString(length);
+        stringReferences.add(value);
+        return value;
+    }
+    
+    /**
+     * Decode UTF-8 string
+     * @param length
+     * @return 
+     */
+    private String decodeString(int length) throws AmfException {
+        checkLength(length);
+        checkRemaining(length);
+        if (data.hasArray()) {
+            String value = new String(data.array(), data.arrayOffset() + data.position(), length, StandardCharsets.UTF_8);
+            data.position(data.position() + length);
+            return value;
+        }
+        byte[] chars = new byte[length];
+        data.get(chars);
+        return new String(chars, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Get referenced object
+     * @param index
+     * @return
+     * @throws AmfException 
+     */
+    private Object readReference(int index) throws AmfException {
+        if (index >= objectReferences.size()) {
+            throw new AmfException("Invalid object reference: " + index);
+        }
+        return objectReferences.get(index);
+    }
+    
+    /**
+     * Read XML document
+     * @return
+     * @throws AmfException 
+     */
+    private Object readXml() throws AmfException {
+        int header = readU29();
+        if ((header & 1) == 0) {
+            return readReference(header >> 1);
+        }
+        Object document = Xml.parse(decodeString(header >> 1));
+        objectReferences.add(document);
+        return document;
+    }
+    
+    /**
+     * Read date
+     * @return
+     * @throws AmfException 
+     */
+    private Object readDate() throws AmfException {
+        int header = readU29();
+        if ((header & 1) == 0) {
+            return readReference(header >> 1);
+        }
+        Date date = new Date((long) data.getDouble());
+        objectReferences.add(date);
+        return date;
+    }
+    
+    /**
+     * Read array. Dense arrays are read as lists, arrays with associative
+     * part as maps where dense values are keyed by their index.
+     * @return
+     * @throws AmfException 
+     */
+    private Object readArray() throws AmfException {
+        int header = readU29();
+        if ((header & 1) == 0) {
+            return readReference(header >> 1);
+        }
+        int count = header >> 1;
+        checkCount(count);
+        String key = readString();
+        if (key.isEmpty()) {
+            List<Object> list = new ArrayList<>(Math.min(count, data.remaining()));
+            objectReferences.add(list);
+            for (int i = 0; i < count; i++) {
+                list.add(read());
+            }
+            return list;
+        }
+        CompactMap<String, Object> map = new CompactMap<>();
+        objectReferences.add(map);
+        while (!key.isEmpty()) {
+            map.put(key, read());
+            checkCount(map.size() + (long) count);
+            key = readString();
+        }
+        for (int i = 0; i < count; i++) {
+            map.put(Integer.toString(i), read());
+        }
+        map.trimToSize();
+        return map;
+    }
+    
+    /**
+     * Read object
+     * @return
+     * @throws AmfException 
+     */
+    private Object readObject() throws AmfException {
+        int header = readU29();
+        if ((header & 1) == 0) {
+            return readReference(header >> 1);
+        }
+        Traits traits = readTraits(header);
+        if (traits.externalizable) {
+            return readExternalizable(traits);
+        }
+        Class<?> clazz = null;
+        if (null != classRegistry && !traits.className.isEmpty()) {
+            clazz = classRegistry.findClass(traits.className);
+        }
+        if (null != clazz) {
+            ClassCodec codec = ClassCodec.forClass(clazz);
+            Object bean = codec.newInstance();
+            objectReferences.add(bean);
+            for (String name: traits.names) {
+                setProperty(codec, bean, name, read());
+            }
+            if (traits.dynamic) {
+                long count = traits.names.length;
+                for (String name = readString(); !name.isEmpty(); name = readString()) {
+                    setProperty(codec, bean, name, read());
+                    checkCount(++count);
+                }
+            }
+            return bean;
+        }
+        CompactMap<String, Object> object = new CompactMap<>(traits.names.length);
+        objectReferences.add(object);
+        for (String name: traits.names) {
+            object.put(name, read());
+        }
+        if (traits.dynamic) {
+            for (String name = readString(); !name.isEmpty(); name = readString()) {
+                object.put(name, read());
+                checkCount(object.size());
+            }
+            object.trimToSize();
+        }
+        return object;
+    }
+    
+    /**
+     * Set bean property if it exists
+     * @param codec
+     * @param bean
+     * @param name
+     * @param value
+     * @throws AmfException 
+     */
+    private void setProperty(ClassCodec codec, Object bean, String name, Object value) throws AmfException {
+        ClassCodec.Property property = codec.getProperty(name);
+        if (null != property) {
+            property.set(bean, value);
+        }
+    }
+    
+    /**
+     * Read object traits
+     * @param header
+     * @return
+     * @throws AmfException 
+     */
+    private Traits readTraits(int header) throws AmfException {
+        if ((header & 2) == 0) {
+            int index = header >> 2;
+            if (index >= traitsReferences.size()) {
+                throw new AmfException("Invalid traits reference: " + index);
+            }
+            return traitsReferences.get(index);
+        }
+        boolean externalizable = (header & 4) != 0;
+        boolean dynamic = (header & 8) != 0;
+        String className = readString();
+        int count = externalizable ? 0 : header >> 4;
+        checkCount(count);
+        checkRemaining(count);
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = readString();
+        }
+        Traits traits = new Traits(className, dynamic, externalizable, names);
+        traitsReferences.add(traits);
+        return traits;
+    }
+    
+    /**
+     * Read externalizable object. Only Flex collection wrappers are supported,
+     * they are read as the wrapped value.
+     * @param traits
+     * @return
+     * @throws AmfException 
+     */
+    private Object readExternalizable(Traits traits) throws AmfException {
+        switch (traits.className) {
+            case "flex.messaging.io.ArrayCollection":
+            case "flex.messaging.io.ObjectProxy":
+                int index = objectReferences.size();
+                objectReferences.add(null);
+                Object value = read();
+                objectReferences.set(index, value);
+                return value;
+            
+            default:
+                throw new AmfException("Externalizable class isn't supported: " + traits.className);
+        }
+    }
+    
+    /**
+     * Read byte array
+     * @return
+     * @throws AmfException 
+     */
+    private Object readByteArray() throws AmfException {
+        int header = readU29();
+        if ((header & 1) == 0) {
+            return readReference(header >> 1);
+        }
+        int length = header >> 1;
+        checkLength(length);
+        checkRemaining(length);
+        byte[] bytes = new byte[length];
+        data.get(bytes);
+        objectReferences.add(bytes);
+        return bytes;
+    }
+    
+    /**
+     * Read vector of integers
+     * @return
+     * @throws AmfException 
+     */
+    private Object readIntVector() throws AmfException {
+        int header = readU29();
+        if ((header & 1) == 0) {
+            return readReference(header >> 1);
+        }
+        int count = header >> 1;
+        checkCount(count);
+        // Ignore fixed length flag
+        data.get();
+        checkRemaining(count * 4L);
+        int[] vector = new int[count];
+        for (int i = 0; i < count; i++) {
+            vector[i] = data.getInt();
+        }
+        objectReferences.add(vector);
+        return vector;
+    }
+    
+    /**
+     * Read vector of unsigned integers
+     * @return
+     * @throws AmfException 
+     */
+    private Object readUintVector() throws AmfException {
+        int header = readU29();
+        if ((header & 1) == 0) {
+            return readReference(header >> 1);
+        }
+        int count = header >> 1;
+        checkCount(count);
+        // Ignore fixed length flag
+        data.get();
+        checkRemaining(count * 4L);
+        long[] vector = new long[count];
+        for (int i = 0; i < count; i++) {
+            vector[i] = data.getInt() & 0xFFFFFFFFL;
+        }
+        objectReferences.add(vector);
+        return vector;
+    }
+    
+    /**
+     * Read vector of doubles
+     * @return
+     * @throws AmfException 
+     */
+    private Object readDoubleVector() throws AmfException {
+        int header = readU29();
+        if ((header & 1) == 0) {
+            return readReference(header >> 1);
+        }
+        int count = header >> 1;
+        checkCount(count);
+        // Ignore fixed length flag
+        data.get();
+        checkRemaining(count * 8L);
+        double[] vector = new double[count];
+        for (int i = 0; i < count; i++) {
+            vector[i] = data.getDouble();
+        }
+        objectReferences.add(vector);
+        return vector;
+    }
+    
+    /**
+     * Read vector of objects
+     * @return
+     * @throws AmfException 
+     */
+    private Object readObjectVector() throws AmfException {
+        int header = readU29();
+        if ((header & 1) == 0) {
+            return readReference(header >> 1);
+        }
+        int count = header >> 1;
+        checkCount(count);
+        // Ignore fixed length flag and type name
+        data.get();
+        readString();
+        List<Object> vector = new ArrayList<>(Math.min(count, data.remaining()));
+        objectReferences.add(vector);
+        for (int i = 0; i < count; i++) {
+            vector.add(read());
+        }
+        return vector;
+    }
+    
+    /**
+     * Read dictionary
+     * @return
+     * @throws AmfException 
+     */
+    private Object readDictionary() throws AmfException {
+        int header = readU29();
+        if ((header & 1) == 0) {
+            return readReference(header >> 1);
+        }
+        int count = header >> 1;
+        checkCount(count);
+        // Ignore weak keys flag
+        data.get();
+        Map<Object, Object> dictionary = new LinkedHashMap<>();
+        objectReferences.add(dictionary);
+        for (int i = 0; i < count; i++) {
+            Object key = read();
+            dictionary.put(key, read());
+        }
+        return dictionary;
+    }
+    
+    /**
+     * Check string or byte array length fits the limits
+     * @param length
+     * @throws AmfException 
+     */
+    private void checkLength(int length) throws AmfException {
+        if (length > limits.getMaxStringBytes()) {
+            throw new AmfException("Value too long: " + length + " bytes");
+        }
+    }
+    
+    /**
+     * Check entries count fits the limits
+     * @param count
+     * @throws AmfException 
+     */
+    private void checkCount(long count) throws AmfException {
+        if (count > limits.getMaxEntries()) {
+            throw new AmfException("Too many entries: " + count);
+        }
+    }
+    
+    /**
+     * Check buffer has enough bytes
+     * @param length 
+     */
+    private void checkRemaining(long length) {
+        if (data.remaining() < length) {
+            throw new BufferUnderflowException();
+        }
+    }
+    
+    /**
+     * Object traits
+     */
+    private static final class Traits {
+        
+        private final String className;
+        
+        private final boolean dynamic;
+        
+        private final boolean externalizable;
+        
+        private final String[] names;
+        
+        /**
+         * Class constructor
+         * @param className
+         * @param dynamic
+         * @param externalizable
+         * @param names 
+         */
+        Traits(String className, boolean dynamic, boolean externalizable, String[] names) {
+            this.className = className;
+            this.dynamic = dynamic;
+            this.externalizable = externalizable;
+            this.names = names;
+        }
+    
+    }
+
+}
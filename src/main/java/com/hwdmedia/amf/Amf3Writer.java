@@ -0,0 +1,479 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import org.w3c.dom.Document;
+
+/**
+ * AMF3 Writer
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public final class Amf3Writer implements Closeable {
+    
+    private static final int MIN_INTEGER = -0x10000000;
+    
+    private static final int MAX_INTEGER = 0x0FFFFFFF;
+    
+    private static final int MAX_U29 = 0x1FFFFFFF;
+    
+    private AmfOutput out;
+    
+    private Map<String, Integer> stringReferences = new HashMap<>();
+    
+    private Map<Object, Integer> objectReferences = new IdentityHashMap<>();
+    
+    private Map<Class<?>, Integer> traitsReferences = new HashMap<>();
+    
+    private ClassAliasRegistry classRegistry;
+    
+    /**
+     * Class constructor
+     */
+    public Amf3Writer() {
+        out = new AmfOutput();
+    }
+    
+    /**
+     * Class constructor. Data is written into the buffer starting from its
+     * current position. When the buffer is full it's replaced by a larger
+     * one of the same kind, so the result must be taken by getByteBuffer().
+     * @param buffer 
+     */
+    public Amf3Writer(ByteBuffer buffer) {
+        out = new AmfOutput(buffer);
+    }
+    
+    /**
+     * Class constructor. Buffers are borrowed from the pool and returned
+     * back on grow and on close.
+     * @param pool 
+     */
+    public Amf3Writer(ByteBufferPool pool) {
+        out = new AmfOutput(pool);
+    }
+    
+    /**
+     * Class constructor
+     * @param out 
+     */
+    Amf3Writer(AmfOutput out) {
+        this.out = out;
+    }
+    
+    /**
+     * Set registry of typed object classes. Objects of registered classes
+     * are written with their aliases.
+     * @param classRegistry 
+     */
+    public void setClassRegistry(ClassAliasRegistry classRegistry) {
+        this.classRegistry = classRegistry;
+    }
+    
+    /**
+     * Write AMF data
+     * @param value
+     * @throws IOException
+     * @throws AmfException 
+     */
+    public void write(Object value) throws IOException, AmfException {
+        if (null == value) {
+            out.put(AmfTypes.AMF3_NULL);
+        } else if (value instanceof Boolean) {
+            out.put(((Boolean) value) ? AmfTypes.AMF3_TRUE : AmfTypes.AMF3_FALSE);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            writeInteger(((Number) value).intValue());
+        } else if (value instanceof Number) {
+            writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof String || value instanceof Character) {
+            out.put(AmfTypes.AMF3_STRING);
+            writeString(value.toString());
+        } else if (value instanceof Date) {
+            writeDate(value, ((Date) value).getTime());
+        } else if (value instanceof Calendar) {
+            writeDate(value, ((Calendar) value).getTimeInMillis());
+        } else if (value instanceof Instant) {
+            writeDate(value, ((Instant) value).toEpochMilli());
+        } else if (value instanceof OffsetDateTime) {
+            writeDate(value, ((OffsetDateTime) value).toInstant().toEpochMilli());
+        } else if (value instanceof ZonedDateTime) {
+            writeDate(value, ((ZonedDateTime) value).toInstant().toEpochMilli());
+        } else if (value instanceof Document) {
+            writeXml((Document) value);
+        } else if (value instanceof XmlDocument) {
+            writeXml((XmlDocument) value);
+        } else if (value instanceof byte[]) {
+            writeByteArray((byte[]) value);
+        } else if (value instanceof int[]) {
+            writeIntVector((int[]) value);
+        } else if (value instanceof double[]) {
+            writeDoubleVector((double[]) value);
+        } else if (value instanceof char[]) {
+            out.put(AmfTypes.AMF3_STRING);
+            writeString(new String((char[]) value));
+        } else if (value.getClass().isArray()) {
+            writeArray(value);
+        } else if (value instanceof Map) {
+            writeAssociativeArray((Map) value);
+        } else if (value instanceof Collection) {
+            writeCollection((Collection) value);
+        } else if (value instanceof Amf0EncodeCache.Value) {
+            // AMF0 encode cache doesn't apply to AMF3
+            write(((Amf0EncodeCache.Value) value).getValue());
+        } else {
+            writeObject(value);
+        }
+    }
+    
+    /**
+     * Get bytes array of AMF data
+     * @return 
+     */
+    public byte[] getBytes() {
+        byte[] bytes = new byte[size()];
+        getByteBuffer().get(bytes);
+        return bytes;
+    }
+    
+    /**
+     * Get ByteBuffer of AFM data. Returned buffer shares content with the
+     * writer, so no data is copied.
+     * @return 
+     */
+    public ByteBuffer getByteBuffer() {
+        return out.getByteBuffer();
+    }
+    
+    /**
+     * Get size of AMF data
+     * @return 
+     */
+    public int size() {
+        return out.size();
+    }
+    
+    /**
+     * Discard written data and reference tables to reuse the writer
+     */
+    public void reset() {
+        out.reset();
+        resetReferences();
+    }
+    
+    /**
+     * Close all resources
+     * @throws IOException 
+     */
+    @Override
+    public void close() throws IOException {
+        out.release();
+    }
+    
+    /**
+     * Clear reference tables
+     */
+    void resetReferences() {
+        stringReferences.clear();
+        objectReferences.clear();
+        traitsReferences.clear();
+    }
+    
+    /**
+     * Write variable length 29 bit unsigned integer
+     * @param value 
+     */
+    private void writeU29(int value) {
+        value &= MAX_U29;
+        if (value < 0x80) {
+            out.put(value);
+        } else if (value < 0x4000) {
+            out.ensure(2).put((byte) ((value >> 7) | 0x80)).put((byte) (value & 0x7F));
+        } else if (value < 0x200000) {
+            out.ensure(3).put((byte) ((value >> 14) | 0x80)).put((byte) ((value >> 7) | 0x80))
+                    .put((byte) (value & 0x7F));
+        } else {
+            out.ensure(4).put((byte) ((value >> 22) | 0x80)).put((byte) ((value >> 15) | 0x80))
+                    .put((byte) ((value >> 8) | 0x80)).put((byte) value);
+        }
+    }
+    
+    /**
+     * Write reference if value was already written
+     * @param value
+     * @return true if reference was written
+     */
+    private boolean writeReference(Object value) {
+        Integer index = objectReferences.get(value);
+        if (null != index) {
+            writeU29(index << 1);
+            return true;
+        }
+        objectReferences.put(value, objectReferences.size());
+        return false;
+    }
+    
+    /**
+     * Write length of inline value
+     * @param length
+     * @throws AmfException 
+     */
+    private void writeLength(int length) throws AmfException {
+        if (length > MAX_U29 >> 1) {
+            throw new AmfException("Value is too large: " + length);
+        }
+        writeU29((length << 1) | 1);
+    }
+    
+    /**
+     * Write integer
+     * @param value 
+     */
+    private void writeInteger(int value) {
+        if (value < MIN_INTEGER || value > MAX_INTEGER) {
+            writeDouble(value);
+        } else {
+            out.put(AmfTypes.AMF3_INTEGER);
+            writeU29(value);
+        }
+    }
+    
+    /**
+     * Write double
+     * @param value 
+     */
+    private void writeDouble(double value) {
+        out.ensure(9).put(AmfTypes.AMF3_DOUBLE).putDouble(value);
+    }
+    
+    /**
+     * Write string without type marker
+     * @param value
+     * @throws AmfException 
+     */
+    private void writeString(String value) throws AmfException {
+        if (value.isEmpty()) {
+            writeU29(1);
+            return;
+        }
+        Integer index = stringReferences.get(value);
+        if (null != index) {
+            writeU29(index << 1);
+            return;
+        }
+        stringReferences.put(value, stringReferences.size());
+        writeUTF(value);
+    }
+    
+    /**
+     * Write length and UTF-8 bytes of string
+     * @param value
+     * @throws AmfException 
+     */
+    private void writeUTF(String value) throws AmfException {
+        long length = Utf8.encodedLength(value);
+        if (length > MAX_U29 >> 1) {
+            throw new AmfException("Value is too large: " + length);
+        }
+        writeLength((int) length);
+        Utf8.encode(value, out.ensure((int) length));
+    }
+    
+    /**
+     * Write date
+     * @param value date object referenced by identity
+     * @param millis milliseconds since epoch
+     */
+    private void writeDate(Object value, long millis) {
+        out.put(AmfTypes.AMF3_DATE);
+        if (!writeReference(value)) {
+            writeU29(1);
+            out.ensure(8).putDouble(millis);
+        }
+    }
+    
+    /**
+     * Write XML document
+     * @param value
+     * @throws AmfException 
+     */
+    private void writeXml(Document value) throws AmfException {
+        out.put(AmfTypes.AMF3_XML);
+        if (!writeReference(value)) {
+            writeUTF(Xml.transform(value));
+        }
+    }
+    
+    /**
+     * Write XML document in its encoded form
+     * @param value
+     * @throws AmfException 
+     */
+    private void writeXml(XmlDocument value) throws AmfException {
+        out.put(AmfTypes.AMF3_XML);
+        if (!writeReference(value)) {
+            byte[] bytes = value.getBytes();
+            writeLength(bytes.length);
+            out.put(bytes, 0, bytes.length);
+        }
+    }
+    
+    /**
+     * Write byte array
+     * @param value
+     * @throws AmfException 
+     */
+    private void writeByteArray(byte[] value) throws AmfException {
+        out.put(AmfTypes.AMF3_BYTE_ARRAY);
+        if (!writeReference(value)) {
+            writeLength(value.length);
+            out.put(value, 0, value.length);
+        }
+    }
+    
+    /**
+     * Write vector of integers
+     * @param value
+     * @throws AmfException 
+     */
+    private void writeIntVector(int[] value) throws AmfException {
+        out.put(AmfTypes.AMF3_VECTOR_INT);
+        if (!writeReference(value)) {
+            writeLength(value.length);
+            // Not fixed length
+            out.put(0);
+            ByteBuffer buffer = out.ensure(value.length * 4);
+            for (int i = 0; i < value.length; i++) {
+                buffer.putInt(value[i]);
+            }
+        }
+    }
+    
+    /**
+     * Write vector of doubles
+     * @param value
+     * @throws AmfException 
+     */
+    private void writeDoubleVector(double[] value) throws AmfException {
+        out.put(AmfTypes.AMF3_VECTOR_DOUBLE);
+        if (!writeReference(value)) {
+            writeLength(value.length);
+            // Not fixed length
+            out.put(0);
+            ByteBuffer buffer = out.ensure(value.length * 8);
+            for (int i = 0; i < value.length; i++) {
+                buffer.putDouble(value[i]);
+            }
+        }
+    }
+    
+    /**
+     * Write array as dense array
+     * @param value
+     * @throws IOException
+     * @throws AmfException 
+     */
+    private void writeArray(Object value) throws IOException, AmfException {
+        out.put(AmfTypes.AMF3_ARRAY);
+        if (!writeReference(value)) {
+            int length = Array.getLength(value);
+            writeLength(length);
+            // Empty associative part
+            writeU29(1);
+            for (int i = 0; i < length; i++) {
+                write(Array.get(value, i));
+            }
+        }
+    }
+    
+    /**
+     * Write collection as dense array
+     * @param value
+     * @throws IOException
+     * @throws AmfException 
+     */
+    private void writeCollection(Collection value) throws IOException, AmfException {
+        out.put(AmfTypes.AMF3_ARRAY);
+        if (!writeReference(value)) {
+            writeLength(value.size());
+            // Empty associative part
+            writeU29(1);
+            Iterator it = value.iterator();
+            while (it.hasNext()) {
+                write(it.next());
+            }
+        }
+    }
+    
+    /**
+     * Write map as associative array. Entries with empty keys can't be
+     * represented and are skipped.
+     * @param value
+     * @throws IOException
+     * @throws AmfException 
+     */
+    private void writeAssociativeArray(Map value) throws IOException, AmfException {
+        out.put(AmfTypes.AMF3_ARRAY);
+        if (!writeReference(value)) {
+            // Empty dense part
+            writeU29(1);
+            Iterator<Map.Entry> it = value.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry entry = it.next();
+                String key = String.valueOf(entry.getKey());
+                if (!key.isEmpty()) {
+                    writeString(key);
+                    write(entry.getValue());
+                }
+            }
+            writeU29(1);
+        }
+    }
+    
+    /**
+     * Write object with sealed traits of the class public fields
+     * @param value
+     * @throws IOException
+     * @throws AmfException 
+     */
+    private void writeObject(Object value) throws IOException, AmfException {
+        out.put(AmfTypes.AMF3_OBJECT);
+        if (writeReference(value)) {
+            return;
+        }
+        Class<?> clazz = value.getClass();
+        ClassCodec codec = ClassCodec.forClass(clazz);
+        Integer traits = traitsReferences.get(clazz);
+        if (null != traits) {
+            writeU29((traits << 2) | 0x01);
+        } else {
+            traitsReferences.put(clazz, traitsReferences.size());
+            writeU29((codec.size() << 4) | 0x03);
+            String alias = null == classRegistry ? null : classRegistry.getAlias(clazz);
+            writeString(null == alias ? "" : alias);
+            for (int i = 0, size = codec.size(); i < size; i++) {
+                writeString(codec.getName(i));
+            }
+        }
+        for (int i = 0, size = codec.size(); i < size; i++) {
+            write(codec.get(i, value));
+        }
+    }
+
+}
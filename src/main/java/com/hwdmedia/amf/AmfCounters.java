@@ -0,0 +1,212 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free counters of metrics
+ * 
+ * Values and bytes are counted by type marker, times are counted in power of
+ * two buckets: bucket i holds times from 2^(i-1) to 2^i - 1 nanoseconds.
+ * Errors are counted by cause: message of AmfException up to the first
+ * colon or class name of other exceptions. Counters are thread safe and may
+ * be shared by readers and writers.
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public final class AmfCounters implements AmfMetrics {
+    
+    private static final int MARKERS = 256;
+    
+    private static final int BUCKETS = 64;
+    
+    private final AtomicLongArray decodedValues = new AtomicLongArray(MARKERS);
+    
+    private final AtomicLongArray decodedBytes = new AtomicLongArray(MARKERS);
+    
+    private final AtomicLongArray encodedValues = new AtomicLongArray(MARKERS);
+    
+    private final AtomicLongArray encodedBytes = new AtomicLongArray(MARKERS);
+    
+    private final AtomicLongArray decodeTimes = new AtomicLongArray(BUCKETS);
+    
+    private final AtomicLongArray encodeTimes = new AtomicLongArray(BUCKETS);
+    
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    
+    private final ConcurrentMap<String, AtomicLong> decodeErrors = new ConcurrentHashMap<>();
+    
+    private final ConcurrentMap<String, AtomicLong> encodeErrors = new ConcurrentHashMap<>();
+    
+    @Override
+    public void decoded(int typeMarker, int bytes, int depth, long nanos) {
+        decodedValues.incrementAndGet(typeMarker);
+        decodedBytes.addAndGet(typeMarker, bytes);
+        decodeTimes.incrementAndGet(bucket(nanos));
+        int max = maxDepth.get();
+        while (depth > max && !maxDepth.compareAndSet(max, depth)) {
+            max = maxDepth.get();
+        }
+    }
+    
+    @Override
+    public void encoded(int typeMarker, int bytes, long nanos) {
+        encodedValues.incrementAndGet(typeMarker);
+        encodedBytes.addAndGet(typeMarker, bytes);
+        encodeTimes.incrementAndGet(bucket(nanos));
+    }
+    
+    @Override
+    public void decodeFailed(Exception error) {
+        count(decodeErrors, error);
+    }
+    
+    @Override
+    public void encodeFailed(Exception error) {
+        count(encodeErrors, error);
+    }
+    
+    /**
+     * Get number of values read
+     * @param typeMarker
+     * @return 
+     */
+    public long getDecodedValues(int typeMarker) {
+        return decodedValues.get(typeMarker);
+    }
+    
+    /**
+     * Get size of values read in bytes
+     * @param typeMarker
+     * @return 
+     */
+    public long getDecodedBytes(int typeMarker) {
+        return decodedBytes.get(typeMarker);
+    }
+    
+    /**
+     * Get number of values written
+     * @param typeMarker
+     * @return 
+     */
+    public long getEncodedValues(int typeMarker) {
+        return encodedValues.get(typeMarker);
+    }
+    
+    /**
+     * Get size of values written in bytes
+     * @param typeMarker
+     * @return 
+     */
+    public long getEncodedBytes(int typeMarker) {
+        return encodedBytes.get(typeMarker);
+    }
+    
+    /**
+     * Get distribution of reading times
+     * @return number of values by power of two bucket of nanoseconds
+     */
+    public long[] getDecodeTimes() {
+        return toArray(decodeTimes);
+    }
+    
+    /**
+     * Get distribution of writing times
+     * @return number of values by power of two bucket of nanoseconds
+     */
+    public long[] getEncodeTimes() {
+        return toArray(encodeTimes);
+    }
+    
+    /**
+     * Get max nesting depth of values read
+     * @return 
+     */
+    public int getMaxDepth() {
+        return maxDepth.get();
+    }
+    
+    /**
+     * Get number of reading errors by cause
+     * @return 
+     */
+    public Map<String, Long> getDecodeErrors() {
+        return toMap(decodeErrors);
+    }
+    
+    /**
+     * Get number of writing errors by cause
+     * @return 
+     */
+    public Map<String, Long> getEncodeErrors() {
+        return toMap(encodeErrors);
+    }
+    
+    /**
+     * Get time bucket
+     * @param nanos
+     * @return 
+     */
+    private static int bucket(long nanos) {
+        return nanos <= 0 ? 0 : BUCKETS - Long.numberOfLeadingZeros(nanos);
+    }
+    
+    /**
+     * Count error by cause
+     * @param errors
+     * @param error 
+     */
+    private static void count(ConcurrentMap<String, AtomicLong> errors, Exception error) {
+        String cause = error.getClass().getSimpleName();
+        if (error instanceof AmfException && null != error.getMessage()) {
+            int colon = error.getMessage().indexOf(':');
+            cause = colon < 0 ? error.getMessage() : error.getMessage().substring(0, colon);
+        }
+        AtomicLong counter = errors.get(cause);
+        if (null == counter) {
+            AtomicLong created = new AtomicLong();
+            counter = errors.putIfAbsent(cause, created);
+            if (null == counter) {
+                counter = created;
+            }
+        }
+        counter.incrementAndGet();
+    }
+    
+    /**
+     * Copy counters
+     * @param counters
+     * @return 
+     */
+    private static long[] toArray(AtomicLongArray counters) {
+        long[] result = new long[counters.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = counters.get(i);
+        }
+        return result;
+    }
+    
+    /**
+     * Copy counters
+     * @param counters
+     * @return 
+     */
+    private static Map<String, Long> toMap(ConcurrentMap<String, AtomicLong> counters) {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry: counters.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+
+}
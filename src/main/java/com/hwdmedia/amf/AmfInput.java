@@ -0,0 +1,84 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Refill buffer of the data read from channel
+ * 
+ * Buffer keeps only the unread part of the data. It grows over its size
+ * only to hold a single token longer than the buffer and shrinks back after.
+ * 
+ * @author Gennadiy Kozlenko
+ */
+final class AmfInput {
+    
+    private final ReadableByteChannel channel;
+    
+    private final int size;
+    
+    private ByteBuffer buffer;
+    
+    private boolean eof;
+    
+    /**
+     * Class constructor
+     * @param channel blocking channel
+     * @param size buffer size
+     */
+    AmfInput(ReadableByteChannel channel, int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Invalid buffer size: " + size);
+        }
+        this.channel = channel;
+        this.size = size;
+        buffer = ByteBuffer.allocate(size);
+        buffer.flip();
+    }
+    
+    /**
+     * Get buffer
+     * @return
+     */
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+    
+    /**
+     * Discard data before the offset and read more data after the rest
+     * @param offset
+     * @return false at the end of data
+     * @throws AmfException
+     */
+    boolean refill(int offset) throws AmfException {
+        buffer.position(offset);
+        int kept = buffer.remaining();
+        if (!eof && kept >= buffer.capacity() || buffer.capacity() > size && kept < size) {
+            // Grow for the token or shrink back
+            ByteBuffer resized = ByteBuffer.allocate(kept >= buffer.capacity() ? buffer.capacity() * 2 : size);
+            resized.put(buffer);
+            buffer = resized;
+        } else {
+            buffer.compact();
+        }
+        try {
+            int read = 0;
+            while (!eof && read == 0 && buffer.hasRemaining()) {
+                read = channel.read(buffer);
+                eof = read < 0;
+            }
+        } catch (IOException ex) {
+            throw new AmfException("Can't read data", ex);
+        } finally {
+            buffer.flip();
+        }
+        return !eof;
+    }
+
+}
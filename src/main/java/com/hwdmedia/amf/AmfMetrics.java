@@ -0,0 +1,49 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+/**
+ * Metrics of values read and written
+ * 
+ * Metrics are reported for every top level value, nested values are part
+ * of it. Readers and writers without metrics don't measure anything.
+ * Implementations are called on the reading and writing threads and must
+ * be thread safe when shared.
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public interface AmfMetrics {
+    
+    /**
+     * Value is read
+     * @param typeMarker type marker of the value
+     * @param bytes size of the value in bytes
+     * @param depth max nesting depth of objects and arrays
+     * @param nanos time of reading in nanoseconds
+     */
+    void decoded(int typeMarker, int bytes, int depth, long nanos);
+    
+    /**
+     * Value is written
+     * @param typeMarker type marker of the value
+     * @param bytes size of the value in bytes
+     * @param nanos time of writing in nanoseconds
+     */
+    void encoded(int typeMarker, int bytes, long nanos);
+    
+    /**
+     * Value reading failed
+     * @param error AmfException or runtime exception of corrupt data
+     */
+    void decodeFailed(Exception error);
+    
+    /**
+     * Value writing failed
+     * @param error
+     */
+    void encodeFailed(Exception error);
+
+}
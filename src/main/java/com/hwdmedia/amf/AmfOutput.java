@@ -0,0 +1,178 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Growable output buffer shared by AMF writers
+ * 
+ * @author Gennadiy Kozlenko
+ */
+final class AmfOutput {
+    
+    private static final int INITIAL_CAPACITY = 256;
+    
+    private ByteBuffer buffer;
+    
+    private ByteBufferPool pool;
+    
+    private int start;
+    
+    /**
+     * Class constructor
+     */
+    AmfOutput() {
+        buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+    }
+    
+    /**
+     * Class constructor
+     * @param buffer 
+     */
+    AmfOutput(ByteBuffer buffer) {
+        this.buffer = buffer.order(ByteOrder.BIG_ENDIAN);
+        this.start = buffer.position();
+    }
+    
+    /**
+     * Class constructor
+     * @param pool 
+     */
+    AmfOutput(ByteBufferPool pool) {
+        this.pool = pool;
+        this.buffer = pool.acquire(INITIAL_CAPACITY).order(ByteOrder.BIG_ENDIAN);
+    }
+    
+    /**
+     * Ensure buffer has space for the given number of bytes
+     * @param length
+     * @return buffer to write into
+     */
+    ByteBuffer ensure(int length) {
+        if (buffer.remaining() < length) {
+            int required = buffer.position() + length;
+            if (required < 0) {
+                throw new IllegalStateException("AMF data is too large");
+            }
+            int capacity = Math.max(required, buffer.capacity() * 2);
+            if (capacity < 0) {
+                capacity = Integer.MAX_VALUE;
+            }
+            ByteBuffer grown;
+            if (null != pool) {
+                grown = pool.acquire(capacity);
+            } else if (buffer.isDirect()) {
+                grown = ByteBuffer.allocateDirect(capacity);
+            } else {
+                grown = ByteBuffer.allocate(capacity);
+            }
+            grown.order(ByteOrder.BIG_ENDIAN);
+            buffer.flip();
+            grown.put(buffer);
+            if (null != pool) {
+                pool.release(buffer);
+            }
+            buffer = grown;
+        }
+        return buffer;
+    }
+    
+    /**
+     * Put byte
+     * @param value 
+     */
+    void put(int value) {
+        ensure(1).put((byte) value);
+    }
+    
+    /**
+     * Put bytes
+     * @param bytes
+     * @param offset
+     * @param length 
+     */
+    void put(byte[] bytes, int offset, int length) {
+        ensure(length).put(bytes, offset, length);
+    }
+    
+    /**
+     * Put 32 bit integer
+     * @param value 
+     */
+    void putInt(int value) {
+        ensure(4).putInt(value);
+    }
+    
+    /**
+     * Get written data without copying
+     * @return 
+     */
+    ByteBuffer getByteBuffer() {
+        ByteBuffer result = buffer.duplicate();
+        result.limit(buffer.position());
+        result.position(start);
+        return result;
+    }
+    
+    /**
+     * Write data to the stream and discard it
+     * @param stream
+     * @throws IOException 
+     */
+    void writeTo(OutputStream stream) throws IOException {
+        ByteBuffer data = getByteBuffer();
+        if (data.hasArray()) {
+            stream.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        } else {
+            byte[] chunk = new byte[Math.min(data.remaining(), 8192)];
+            while (data.hasRemaining()) {
+                int length = Math.min(data.remaining(), chunk.length);
+                data.get(chunk, 0, length);
+                stream.write(chunk, 0, length);
+            }
+        }
+        reset();
+    }
+    
+    /**
+     * Get byte of written data
+     * @param offset offset from the data start
+     * @return 
+     */
+    int get(int offset) {
+        return buffer.get(start + offset) & 0xFF;
+    }
+    
+    /**
+     * Get size of written data
+     * @return 
+     */
+    int size() {
+        return buffer.position() - start;
+    }
+    
+    /**
+     * Discard written data
+     */
+    void reset() {
+        buffer.position(start);
+    }
+    
+    /**
+     * Return pooled buffer back to the pool
+     */
+    void release() {
+        if (null != pool && null != buffer) {
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+
+}
@@ -32,4 +32,24 @@ public class AmfTypes {
     public static final byte AMF0_TYPED_OBJECT      = 0x10;
     public static final byte AMF0_AVMPLUS_OBJECT    = 0x11;
     
+    // AMF3 markers
+    public static final byte AMF3_UNDEFINED         = 0x00;
+    public static final byte AMF3_NULL              = 0x01;
+    public static final byte AMF3_FALSE             = 0x02;
+    public static final byte AMF3_TRUE              = 0x03;
+    public static final byte AMF3_INTEGER           = 0x04;
+    public static final byte AMF3_DOUBLE            = 0x05;
+    public static final byte AMF3_STRING            = 0x06;
+    public static final byte AMF3_XML_DOCUMENT      = 0x07;
+    public static final byte AMF3_DATE              = 0x08;
+    public static final byte AMF3_ARRAY             = 0x09;
+    public static final byte AMF3_OBJECT            = 0x0a;
+    public static final byte AMF3_XML               = 0x0b;
+    public static final byte AMF3_BYTE_ARRAY        = 0x0c;
+    public static final byte AMF3_VECTOR_INT        = 0x0d;
+    public static final byte AMF3_VECTOR_UINT       = 0x0e;
+    public static final byte AMF3_VECTOR_DOUBLE     = 0x0f;
+    public static final byte AMF3_VECTOR_OBJECT     = 0x10;
+    public static final byte AMF3_DICTIONARY        = 0x11;
+
 }
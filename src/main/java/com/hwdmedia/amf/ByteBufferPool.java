@@ -0,0 +1,30 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pool of byte buffers used by Amf0Writer
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public interface ByteBufferPool {
+    
+    /**
+     * Borrow cleared buffer
+     * @param capacity minimal capacity
+     * @return 
+     */
+    ByteBuffer acquire(int capacity);
+    
+    /**
+     * Return buffer back to the pool
+     * @param buffer 
+     */
+    void release(ByteBuffer buffer);
+
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of class aliases used for typed objects. Registry is thread safe
+ * and may be shared by readers and writers.
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public final class ClassAliasRegistry {
+    
+    private final ConcurrentMap<String, Class<?>> classes = new ConcurrentHashMap<>();
+    
+    private final ConcurrentMap<Class<?>, String> aliases = new ConcurrentHashMap<>();
+    
+    private final ConcurrentMap<Class<?>, byte[]> encodedAliases = new ConcurrentHashMap<>();
+    
+    /**
+     * Register class alias
+     * @param alias
+     * @param clazz 
+     */
+    public void register(String alias, Class<?> clazz) {
+        classes.put(alias, clazz);
+        aliases.put(clazz, alias);
+        encodedAliases.put(clazz, ClassCodec.encodeKey(alias));
+    }
+    
+    /**
+     * Find class by alias
+     * @param alias
+     * @return class or null if alias isn't registered
+     */
+    public Class<?> findClass(String alias) {
+        return classes.get(alias);
+    }
+    
+    /**
+     * Get alias of the class
+     * @param clazz
+     * @return alias or null if class isn't registered
+     */
+    public String getAlias(Class<?> clazz) {
+        return aliases.get(clazz);
+    }
+    
+    /**
+     * Get alias encoded as AMF0 UTF-8 string without type marker
+     * @param clazz
+     * @return 
+     */
+    byte[] getEncodedAlias(Class<?> clazz) {
+        return encodedAliases.get(clazz);
+    }
+
+}
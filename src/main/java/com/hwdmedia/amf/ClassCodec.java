@@ -0,0 +1,319 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cached description of the class used to write objects and to bind read
+ * objects without reflection lookups
+ * 
+ * @author Gennadiy Kozlenko
+ */
+final class ClassCodec {
+    
+    private static final ClassValue<ClassCodec> CACHE = new ClassValue<ClassCodec>() {
+        @Override
+        protected ClassCodec computeValue(Class<?> clazz) {
+            return new ClassCodec(clazz);
+        }
+    };
+    
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+    
+    private final Class<?> clazz;
+    
+    private final String[] names;
+    
+    private final byte[][] encodedNames;
+    
+    private final MethodHandle[] getters;
+    
+    private final MethodHandle constructor;
+    
+    private final Map<String, Property> properties = new HashMap<>();
+    
+    /**
+     * Class constructor
+     * @param clazz 
+     */
+    private ClassCodec(Class<?> clazz) {
+        this.clazz = clazz;
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        List<Field> fields = new ArrayList<>();
+        for (Field field: clazz.getFields()) {
+            if (!Modifier.isStatic(field.getModifiers())) {
+                fields.add(field);
+            }
+        }
+        int size = fields.size();
+        names = new String[size];
+        encodedNames = new byte[size][];
+        getters = new MethodHandle[size];
+        for (int i = 0; i < size; i++) {
+            Field field = fields.get(i);
+            names[i] = field.getName();
+            encodedNames[i] = encodeKey(names[i]);
+            try {
+                getters[i] = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+                if (!Modifier.isFinal(field.getModifiers())) {
+                    properties.put(field.getName(), new Property(field.getType(),
+                            lookup.unreflectSetter(field).asType(SETTER_TYPE)));
+                }
+            } catch (IllegalAccessException ignore) {
+                // Field of inaccessible class is written as null
+            }
+        }
+        // Bean setters take precedence over fields
+        for (Method method: clazz.getMethods()) {
+            String name = method.getName();
+            if (name.length() > 3 && name.startsWith("set") && method.getParameterTypes().length == 1
+                    && !Modifier.isStatic(method.getModifiers())) {
+                try {
+                    properties.put(propertyName(name.substring(3)), new Property(method.getParameterTypes()[0],
+                            lookup.unreflect(method).asType(SETTER_TYPE)));
+                } catch (IllegalAccessException ignore) {
+                    // Setter of inaccessible class is skipped
+                }
+            }
+        }
+        MethodHandle ctor = null;
+        if (!Modifier.isAbstract(clazz.getModifiers()) && !clazz.getName().startsWith("java.")
+                && !Map.class.isAssignableFrom(clazz) && !Collection.class.isAssignableFrom(clazz)) {
+            try {
+                ctor = lookup.findConstructor(clazz, MethodType.methodType(void.class)).asType(CONSTRUCTOR_TYPE);
+            } catch (NoSuchMethodException | IllegalAccessException ignore) {
+                // Class can't be instantiated
+            }
+        }
+        constructor = ctor;
+    }
+    
+    /**
+     * Get codec of the class
+     * @param clazz
+     * @return 
+     */
+    static ClassCodec forClass(Class<?> clazz) {
+        return CACHE.get(clazz);
+    }
+    
+    /**
+     * Get number of fields
+     * @return 
+     */
+    int size() {
+        return names.length;
+    }
+    
+    /**
+     * Get field name
+     * @param index
+     * @return 
+     */
+    String getName(int index) {
+        return names[index];
+    }
+    
+    /**
+     * Get field name encoded as AMF0 UTF-8 string without type marker
+     * @param index
+     * @return 
+     */
+    byte[] getEncodedName(int index) {
+        return encodedNames[index];
+    }
+    
+    /**
+     * Get field value
+     * @param index
+     * @param object
+     * @return field value or null if it's inaccessible
+     */
+    Object get(int index, Object object) {
+        MethodHandle getter = getters[index];
+        if (null == getter) {
+            return null;
+        }
+        try {
+            return (Object) getter.invokeExact(object);
+        } catch (Throwable ignore) {
+            return null;
+        }
+    }
+    
+    /**
+     * Check objects can be read directly into the class instances
+     * @return 
+     */
+    boolean isBean() {
+        return null != constructor;
+    }
+    
+    /**
+     * Create new instance
+     * @return
+     * @throws AmfException 
+     */
+    Object newInstance() throws AmfException {
+        if (null == constructor) {
+            throw new AmfException("Can't instantiate " + clazz.getName());
+        }
+        try {
+            return (Object) constructor.invokeExact();
+        } catch (Throwable ex) {
+            throw new AmfException("Can't instantiate " + clazz.getName(), ex);
+        }
+    }
+    
+    /**
+     * Get writable property
+     * @param name
+     * @return property or null if there is no such property
+     */
+    Property getProperty(String name) {
+        return properties.get(name);
+    }
+    
+    /**
+     * Encode key as AMF0 UTF-8 string without type marker
+     * @param key
+     * @return 
+     */
+    static byte[] encodeKey(String key) {
+        int length = (int) Utf8.encodedLength(key);
+        ByteBuffer buffer = ByteBuffer.allocate(length + 2).putShort((short) length);
+        Utf8.encode(key, buffer);
+        return buffer.array();
+    }
+    
+    /**
+     * Convert read value to the given type
+     * @param value
+     * @param type
+     * @return
+     * @throws AmfException 
+     */
+    static Object convert(Object value, Class<?> type) throws AmfException {
+        if (null == value || type.isInstance(value)) {
+            return value;
+        }
+        if (value instanceof Number) {
+            Number number = (Number) value;
+            if (type == Integer.TYPE || type == Integer.class) {
+                return number.intValue();
+            } else if (type == Long.TYPE || type == Long.class) {
+                return number.longValue();
+            } else if (type == Double.TYPE || type == Double.class) {
+                return number.doubleValue();
+            } else if (type == Float.TYPE || type == Float.class) {
+                return number.floatValue();
+            } else if (type == Short.TYPE || type == Short.class) {
+                return number.shortValue();
+            } else if (type == Byte.TYPE || type == Byte.class) {
+                return number.byteValue();
+            }
+        } else if (value instanceof Boolean) {
+            if (type == Boolean.TYPE) {
+                return value;
+            }
+        } else if (value instanceof String) {
+            String string = (String) value;
+            if ((type == Character.TYPE || type == Character.class) && string.length() == 1) {
+                return string.charAt(0);
+            }
+        } else if (value instanceof Date) {
+            Date date = (Date) value;
+            if (type == Long.TYPE || type == Long.class) {
+                return date.getTime();
+            } else if (type == Instant.class) {
+                return date.toInstant();
+            }
+        } else if (value instanceof Instant) {
+            if (type == Date.class) {
+                return Date.from((Instant) value);
+            }
+        }
+        throw new AmfException("Can't convert " + value.getClass().getName() + " to " + type.getName());
+    }
+    
+    /**
+     * Get property name by setter name suffix
+     * @param suffix
+     * @return 
+     */
+    private static String propertyName(String suffix) {
+        if (suffix.length() > 1 && Character.isUpperCase(suffix.charAt(1))) {
+            return suffix;
+        }
+        return Character.toLowerCase(suffix.charAt(0)) + suffix.substring(1);
+    }
+    
+    /**
+     * Writable property
+     */
+    static final class Property {
+        
+        private final Class<?> type;
+        
+        private final MethodHandle setter;
+        
+        /**
+         * Class constructor
+         * @param type
+         * @param setter 
+         */
+        Property(Class<?> type, MethodHandle setter) {
+            this.type = type;
+            this.setter = setter;
+        }
+        
+        /**
+         * Get property type
+         * @return 
+         */
+        Class<?> getType() {
+            return type;
+        }
+        
+        /**
+         * Set property value. Null values of primitive properties are ignored.
+         * @param object
+         * @param value
+         * @throws AmfException 
+         */
+        void set(Object object, Object value) throws AmfException {
+            if (null == value && type.isPrimitive()) {
+                return;
+            }
+            Object converted = convert(value, type);
+            try {
+                setter.invokeExact(object, converted);
+            } catch (Throwable ex) {
+                throw new AmfException("Can't set property of type " + type.getName(), ex);
+            }
+        }
+    
+    }
+
+}
@@ -0,0 +1,394 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Compact insertion-ordered map of decoded objects
+ * 
+ * Keys and values are kept in parallel arrays without entry objects. Small
+ * maps are searched linearly, larger ones get open addressing hash table of
+ * array indexes. Iteration order is the insertion order as in LinkedHashMap.
+ * 
+ * @author Gennadiy Kozlenko
+ */
+final class CompactMap<K, V> extends AbstractMap<K, V> implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private static final int DEFAULT_CAPACITY = 8;
+    
+    // Maps larger than this are hashed
+    private static final int LINEAR_THRESHOLD = 8;
+    
+    private Object[] keys;
+    
+    private Object[] values;
+    
+    private int size;
+    
+    // Array indexes plus one by key hash, null for small maps
+    private transient int[] table;
+    
+    private transient int modCount;
+    
+    private transient Set<Map.Entry<K, V>> entrySet;
+    
+    /**
+     * Class constructor
+     */
+    CompactMap() {
+        this(DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * Class constructor
+     * @param capacity expected number of entries
+     */
+    CompactMap(int capacity) {
+        keys = new Object[capacity];
+        values = new Object[capacity];
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+    
+    @Override
+    public V get(Object key) {
+        int index = indexOf(key);
+        return index < 0 ? null : CompactMap.<V>cast(values[index]);
+    }
+    
+    @Override
+    public V put(K key, V value) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            V previous = cast(values[index]);
+            values[index] = value;
+            return previous;
+        }
+        if (size == keys.length) {
+            int capacity = Math.max(DEFAULT_CAPACITY, size + (size >> 1));
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+        modCount++;
+        if (null != table) {
+            if (size * 2 > table.length) {
+                rehash();
+            } else {
+                insert(size - 1);
+            }
+        } else if (size > LINEAR_THRESHOLD) {
+            rehash();
+        }
+        return null;
+    }
+    
+    @Override
+    public V remove(Object key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        V previous = cast(values[index]);
+        removeAt(index);
+        return previous;
+    }
+    
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+        table = null;
+        modCount++;
+    }
+    
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        if (null == entrySet) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+    
+    /**
+     * Release unused capacity
+     */
+    void trimToSize() {
+        if (size < keys.length) {
+            keys = Arrays.copyOf(keys, size);
+            values = Arrays.copyOf(values, size);
+        }
+    }
+    
+    /**
+     * Find key index
+     * @param key
+     * @return index or -1 if there is no such key
+     */
+    private int indexOf(Object key) {
+        if (null == table) {
+            for (int i = 0; i < size; i++) {
+                if (Objects.equals(key, keys[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        int mask = table.length - 1;
+        for (int slot = hash(key) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int index = table[slot] - 1;
+            if (Objects.equals(key, keys[index])) {
+                return index;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Remove entry at the index keeping the order of the rest
+     * @param index
+     */
+    private void removeAt(int index) {
+        if (null != table) {
+            if (size - 1 > LINEAR_THRESHOLD) {
+                delete(index);
+            } else {
+                table = null;
+            }
+        }
+        int moved = size - index - 1;
+        System.arraycopy(keys, index + 1, keys, index, moved);
+        System.arraycopy(values, index + 1, values, index, moved);
+        size--;
+        keys[size] = null;
+        values[size] = null;
+        modCount++;
+    }
+    
+    /**
+     * Delete array index from the hash table shifting back the following
+     * slots of the probe chain, indexes after it are decremented
+     * @param index
+     */
+    private void delete(int index) {
+        int mask = table.length - 1;
+        int hole = hash(keys[index]) & mask;
+        while (table[hole] != index + 1) {
+            hole = (hole + 1) & mask;
+        }
+        for (int slot = (hole + 1) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int home = hash(keys[table[slot] - 1]) & mask;
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                table[hole] = table[slot];
+                hole = slot;
+            }
+        }
+        table[hole] = 0;
+        for (int slot = 0; slot < table.length; slot++) {
+            if (table[slot] > index + 1) {
+                table[slot]--;
+            }
+        }
+    }
+    
+    /**
+     * Build hash table of all keys
+     */
+    private void rehash() {
+        int length = Integer.highestOneBit(Math.max(size, 1) * 4 - 1);
+        table = new int[length];
+        for (int i = 0; i < size; i++) {
+            insert(i);
+        }
+    }
+    
+    /**
+     * Insert array index into the hash table
+     * @param index
+     */
+    private void insert(int index) {
+        int mask = table.length - 1;
+        int slot = hash(keys[index]) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = index + 1;
+    }
+    
+    /**
+     * Cast stored key or value
+     * @param value
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(Object value) {
+        return (T) value;
+    }
+    
+    /**
+     * Get spread hash of the key
+     * @param key
+     * @return
+     */
+    private static int hash(Object key) {
+        int h = null == key ? 0 : key.hashCode();
+        return h ^ (h >>> 16);
+    }
+    
+    /**
+     * Restore hash table after deserialization
+     * @param in
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (size > LINEAR_THRESHOLD) {
+            rehash();
+        }
+    }
+    
+    /**
+     * Entries view
+     */
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+        
+        @Override
+        public int size() {
+            return size;
+        }
+        
+        @Override
+        public void clear() {
+            CompactMap.this.clear();
+        }
+    
+    }
+    
+    /**
+     * Entries iterator
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        
+        private int next;
+        
+        private int last = -1;
+        
+        private int expectedModCount = modCount;
+        
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+        
+        @Override
+        public Map.Entry<K, V> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return new Entry(last);
+        }
+        
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeAt(last);
+            next = last;
+            last = -1;
+            expectedModCount = modCount;
+        }
+    
+    }
+    
+    /**
+     * Entry view of the array index
+     */
+    private final class Entry implements Map.Entry<K, V> {
+        
+        private final int index;
+        
+        Entry(int index) {
+            this.index = index;
+        }
+        
+        @Override
+        public K getKey() {
+            return cast(keys[index]);
+        }
+        
+        @Override
+        public V getValue() {
+            return cast(values[index]);
+        }
+        
+        @Override
+        public V setValue(V value) {
+            V previous = cast(values[index]);
+            values[index] = value;
+            return previous;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry other = (Map.Entry) obj;
+            return Objects.equals(getKey(), other.getKey()) && Objects.equals(getValue(), other.getValue());
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+        }
+        
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    
+    }
+
+}
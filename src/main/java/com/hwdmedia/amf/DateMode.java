@@ -0,0 +1,24 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+/**
+ * How dates are read
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public enum DateMode {
+    
+    // java.util.Date
+    DATE,
+    
+    // Long milliseconds since epoch
+    EPOCH_MILLIS,
+    
+    // java.time.Instant
+    INSTANT
+
+}
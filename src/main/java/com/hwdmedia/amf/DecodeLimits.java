@@ -0,0 +1,86 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+/**
+ * Decoding limits
+ * 
+ * Lengths and counts read from the data are checked against the limits
+ * before anything is allocated, data exceeding the limits is rejected with
+ * AmfException.
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public final class DecodeLimits {
+    
+    /**
+     * No limits except the data itself
+     */
+    public static final DecodeLimits UNLIMITED = new DecodeLimits(Integer.MAX_VALUE, Long.MAX_VALUE,
+            Integer.MAX_VALUE, Long.MAX_VALUE);
+    
+    /**
+     * Limits for untrusted RTMP traffic: 1MB strings, 64K entries, 32 levels
+     * of nesting, 16MB per value
+     */
+    public static final DecodeLimits STRICT = new DecodeLimits(1 << 20, 1 << 16, 32, 16 << 20);
+    
+    private final int maxStringBytes;
+    
+    private final long maxEntries;
+    
+    private final int maxDepth;
+    
+    private final long maxBytes;
+    
+    /**
+     * Class constructor
+     * @param maxStringBytes max size of string, XML document or byte array
+     * @param maxEntries max number of object, array, vector or dictionary
+     * entries
+     * @param maxDepth max nesting of objects and arrays
+     * @param maxBytes max encoded size of top level AMF0 value
+     */
+    public DecodeLimits(int maxStringBytes, long maxEntries, int maxDepth, long maxBytes) {
+        this.maxStringBytes = maxStringBytes;
+        this.maxEntries = maxEntries;
+        this.maxDepth = maxDepth;
+        this.maxBytes = maxBytes;
+    }
+    
+    /**
+     * Get max size of string, XML document or byte array
+     * @return 
+     */
+    public int getMaxStringBytes() {
+        return maxStringBytes;
+    }
+    
+    /**
+     * Get max number of entries
+     * @return 
+     */
+    public long getMaxEntries() {
+        return maxEntries;
+    }
+    
+    /**
+     * Get max nesting of objects and arrays
+     * @return 
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+    
+    /**
+     * Get max encoded size of top level value
+     * @return 
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+}
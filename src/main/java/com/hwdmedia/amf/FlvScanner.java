@@ -0,0 +1,297 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * FLV script tags scanner
+ * 
+ * File is memory-mapped, audio and video tags are skipped by their tag
+ * headers, script tag data is passed to Amf0Reader as a slice of the
+ * mapping without copying.
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public final class FlvScanner implements Closeable {
+    
+    public static final int TAG_AUDIO = 0x08;
+    public static final int TAG_VIDEO = 0x09;
+    public static final int TAG_SCRIPT = 0x12;
+    
+    private static final int HEADER_SIZE = 9;
+    
+    private static final int TAG_HEADER_SIZE = 11;
+    
+    private static final int PREVIOUS_TAG_SIZE = 4;
+    
+    private static final long MAX_WINDOW = Integer.MAX_VALUE;
+    
+    private RandomAccessFile file;
+    
+    private FileChannel channel;
+    
+    private long size;
+    
+    // Currently mapped part of the file
+    private ByteBuffer window;
+    
+    private long windowOffset;
+    
+    // Offset of the next tag header
+    private long position;
+    
+    private long tagOffset;
+    
+    private int timestamp;
+    
+    private ByteBuffer tagData;
+    
+    private StringCache stringCache;
+    
+    /**
+     * Class constructor
+     * @param file
+     * @throws IOException
+     * @throws AmfException 
+     */
+    public FlvScanner(File file) throws IOException, AmfException {
+        this.file = new RandomAccessFile(file, "r");
+        try {
+            channel = this.file.getChannel();
+            size = channel.size();
+            map(0);
+            readHeader();
+        } catch (IOException | AmfException e) {
+            close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Class constructor
+     * @param data
+     * @throws AmfException 
+     */
+    public FlvScanner(ByteBuffer data) throws AmfException {
+        window = data.slice();
+        size = window.limit();
+        readHeader();
+    }
+    
+    /**
+     * Set cache of keys and short string values
+     * @param stringCache 
+     */
+    public void setStringCache(StringCache stringCache) {
+        this.stringCache = stringCache;
+    }
+    
+    /**
+     * Move to the next script tag
+     * @return false when there are no more script tags
+     * @throws IOException 
+     */
+    public boolean nextScriptTag() throws IOException {
+        tagData = null;
+        while (ensure(position, TAG_HEADER_SIZE)) {
+            int offset = (int) (position - windowOffset);
+            int type = window.get(offset) & 0xff;
+            int dataSize = getUnsignedMedium(offset + 1);
+            int time = getUnsignedMedium(offset + 4) | (window.get(offset + 7) & 0xff) << 24;
+            long next = position + TAG_HEADER_SIZE + dataSize + PREVIOUS_TAG_SIZE;
+            // Encrypted script tags have the filter bit set and are skipped too
+            if (TAG_SCRIPT == type) {
+                if (!ensure(position + TAG_HEADER_SIZE, dataSize)) {
+                    break;
+                }
+                offset = (int) (position + TAG_HEADER_SIZE - windowOffset);
+                ByteBuffer slice = window.duplicate();
+                slice.limit(offset + dataSize);
+                slice.position(offset);
+                tagData = slice.slice();
+                tagOffset = position;
+                timestamp = time;
+                position = next;
+                return true;
+            }
+            position = next;
+        }
+        position = size;
+        return false;
+    }
+    
+    /**
+     * Get file offset of the current script tag
+     * @return 
+     */
+    public long getTagOffset() {
+        return tagOffset;
+    }
+    
+    /**
+     * Get timestamp of the current script tag in milliseconds
+     * @return 
+     */
+    public int getTimestamp() {
+        return timestamp;
+    }
+    
+    /**
+     * Get data of the current script tag
+     * @return 
+     */
+    public ByteBuffer getTagData() {
+        if (null == tagData) {
+            throw new IllegalStateException("No current script tag");
+        }
+        return tagData.asReadOnlyBuffer();
+    }
+    
+    /**
+     * Get reader of the current script tag data. Strict arrays of numbers
+     * are read as double[].
+     * @return 
+     */
+    public Amf0Reader getReader() {
+        Amf0Reader reader = new Amf0Reader(getTagData());
+        reader.setStringCache(stringCache);
+        reader.setPrimitiveArrays(true);
+        return reader;
+    }
+    
+    /**
+     * Find and read onMetaData script tag
+     * 
+     * Keyframes arrays (keyframes.times, keyframes.filepositions) are
+     * returned as double[].
+     * @return metadata or null when file has no onMetaData tag
+     * @throws IOException
+     * @throws AmfException 
+     */
+    public Map<String, Object> readMetaData() throws IOException, AmfException {
+        while (nextScriptTag()) {
+            Amf0Reader reader = getReader();
+            if (!"onMetaData".equals(reader.read()) || !reader.hasNext()) {
+                continue;
+            }
+            Object value = reader.read();
+            if (value instanceof Map) {
+                Map<String, Object> metaData = asMap(value);
+                Object keyframes = metaData.get("keyframes");
+                if (keyframes instanceof Map) {
+                    for (Map.Entry<String, Object> entry : asMap(keyframes).entrySet()) {
+                        if (entry.getValue() instanceof List) {
+                            entry.setValue(toDoubleArray((List<?>) entry.getValue()));
+                        }
+                    }
+                }
+                return metaData;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Release the file mapping
+     * @throws IOException 
+     */
+    @Override
+    public void close() throws IOException {
+        window = null;
+        tagData = null;
+        channel = null;
+        if (null != file) {
+            file.close();
+            file = null;
+        }
+    }
+    
+    /**
+     * Read and check FLV header
+     * @throws AmfException 
+     */
+    private void readHeader() throws AmfException {
+        if (size < HEADER_SIZE || window.get(0) != 'F' || window.get(1) != 'L' || window.get(2) != 'V') {
+            throw new AmfException("Not an FLV file");
+        }
+        position = (window.getInt(5) & 0xffffffffL) + PREVIOUS_TAG_SIZE;
+    }
+    
+    /**
+     * Make sure the region is mapped
+     * @param offset
+     * @param length
+     * @return false when file ends before the region does
+     * @throws IOException 
+     */
+    private boolean ensure(long offset, int length) throws IOException {
+        if (offset + length > size) {
+            return false;
+        }
+        if (offset < windowOffset || offset + length > windowOffset + window.limit()) {
+            map(offset);
+        }
+        return true;
+    }
+    
+    /**
+     * Map part of the file starting from the offset
+     * @param offset
+     * @throws IOException 
+     */
+    private void map(long offset) throws IOException {
+        if (null == channel) {
+            throw new IOException("Scanner is closed");
+        }
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(size - offset, MAX_WINDOW));
+        windowOffset = offset;
+    }
+    
+    /**
+     * Get 24-bit unsigned integer
+     * @param offset
+     * @return 
+     */
+    private int getUnsignedMedium(int offset) {
+        return (window.get(offset) & 0xff) << 16 | (window.get(offset + 1) & 0xff) << 8 | (window.get(offset + 2) & 0xff);
+    }
+    
+    /**
+     * Convert list of numbers to double array
+     * @param list
+     * @return 
+     */
+    private static Object toDoubleArray(List<?> list) {
+        double[] array = new double[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            Object item = list.get(i);
+            if (!(item instanceof Number)) {
+                return list;
+            }
+            array[i] = ((Number) item).doubleValue();
+        }
+        return array;
+    }
+    
+    /**
+     * Cast decoded object, keys of decoded objects are strings
+     * @param value
+     * @return 
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(Object value) {
+        return (Map<String, Object>) value;
+    }
+
+}
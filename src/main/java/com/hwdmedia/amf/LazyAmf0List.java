@@ -0,0 +1,71 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list view over encoded AMF0 strict array. Elements are decoded
+ * on first access.
+ * 
+ * @author Gennadiy Kozlenko
+ */
+final class LazyAmf0List extends AbstractList<Object> implements RandomAccess, LazyAmf0Value {
+    
+    private final LazyAmf0Source source;
+    
+    private final int index;
+    
+    private int[] entries;
+    
+    /**
+     * Class constructor
+     * @param source
+     * @param index 
+     */
+    LazyAmf0List(LazyAmf0Source source, int index) {
+        this.source = source;
+        this.index = index;
+    }
+    
+    @Override
+    public Object get(int i) {
+        int[] elements = entries();
+        if (i < 0 || i >= elements.length) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + elements.length);
+        }
+        return source.getValue(elements[i]);
+    }
+    
+    @Override
+    public int size() {
+        return entries().length;
+    }
+    
+    @Override
+    public ByteBuffer getRawBytes() {
+        return source.getRawBytes(index);
+    }
+    
+    @Override
+    public int getComplexCount() {
+        return source.getComplexCount(index);
+    }
+    
+    /**
+     * Get entries
+     * @return 
+     */
+    private int[] entries() {
+        if (null == entries) {
+            entries = source.getEntries(index);
+        }
+        return entries;
+    }
+
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read-only map view over encoded AMF0 object or ECMA array. Entry values
+ * are decoded on first access.
+ * 
+ * @author Gennadiy Kozlenko
+ */
+final class LazyAmf0Map extends AbstractMap<String, Object> implements LazyAmf0Value {
+    
+    private final LazyAmf0Source source;
+    
+    private final int index;
+    
+    private int[] entries;
+    
+    /**
+     * Class constructor
+     * @param source
+     * @param index 
+     */
+    LazyAmf0Map(LazyAmf0Source source, int index) {
+        this.source = source;
+        this.index = index;
+    }
+    
+    @Override
+    public int size() {
+        return entries().length;
+    }
+    
+    @Override
+    public Object get(Object key) {
+        int entry = find(key);
+        return entry < 0 ? null : source.getValue(entry);
+    }
+    
+    @Override
+    public boolean containsKey(Object key) {
+        return find(key) >= 0;
+    }
+    
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new Iterator<Map.Entry<String, Object>>() {
+                    
+                    private int next;
+                    
+                    @Override
+                    public boolean hasNext() {
+                        return next < entries().length;
+                    }
+                    
+                    @Override
+                    public Map.Entry<String, Object> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        int entry = entries[next++];
+                        return new AbstractMap.SimpleImmutableEntry<>(source.getKey(entry), source.getValue(entry));
+                    }
+                    
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                
+                };
+            }
+            
+            @Override
+            public int size() {
+                return entries().length;
+            }
+        
+        };
+    }
+    
+    @Override
+    public ByteBuffer getRawBytes() {
+        return source.getRawBytes(index);
+    }
+    
+    @Override
+    public int getComplexCount() {
+        return source.getComplexCount(index);
+    }
+    
+    /**
+     * Find entry by key comparing encoded keys
+     * @param key
+     * @return entry or -1
+     */
+    private int find(Object key) {
+        if (key instanceof String) {
+            for (int entry : entries()) {
+                if (source.keyEquals(entry, (String) key)) {
+                    return entry;
+                }
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Get entries
+     * @return 
+     */
+    private int[] entries() {
+        if (null == entries) {
+            entries = source.getEntries(index);
+        }
+        return entries;
+    }
+
+}
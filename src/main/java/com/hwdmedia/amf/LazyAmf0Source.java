@@ -0,0 +1,336 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of encoded AMF0 value shared by its lazy views
+ * 
+ * The value is walked once, offsets of its objects, arrays and their entries
+ * are recorded without decoding anything. Entry values are decoded on first
+ * access and cached.
+ * 
+ * @author Gennadiy Kozlenko
+ */
+final class LazyAmf0Source {
+    
+    private static final int INITIAL_SIZE = 16;
+    
+    private static final Object NOT_DECODED = new Object();
+    
+    private final ByteBuffer data;
+    
+    private final Amf0Parser parser;
+    
+    private final StringCache stringCache;
+    
+    private final List<Object> references;
+    
+    // Reference index of the first object or array
+    private final int base;
+    
+    // Objects and arrays in stream order
+    private int size;
+    
+    private int[] starts = new int[INITIAL_SIZE];
+    
+    private int[] ends = new int[INITIAL_SIZE];
+    
+    private int[] counts = new int[INITIAL_SIZE];
+    
+    private int[] firstEntries = new int[INITIAL_SIZE];
+    
+    private int[] lastEntries = new int[INITIAL_SIZE];
+    
+    private int[] entryCounts = new int[INITIAL_SIZE];
+    
+    private boolean[] selfContained = new boolean[INITIAL_SIZE];
+    
+    // Entries of all objects and arrays
+    private int entryCount;
+    
+    private int[] keyOffsets = new int[INITIAL_SIZE];
+    
+    private int[] keyLengths = new int[INITIAL_SIZE];
+    
+    private int[] valueOffsets = new int[INITIAL_SIZE];
+    
+    private int[] nextEntries = new int[INITIAL_SIZE];
+    
+    private Object[] values;
+    
+    private Map<Integer, Object> amf3Values;
+    
+    /**
+     * Walk the value started by token
+     * @param reader parser positioned after the start token
+     * @param start offset of the value type marker
+     * @param token
+     * @param references reader reference table
+     * @param stringCache
+     * @throws AmfException 
+     */
+    LazyAmf0Source(Amf0Parser reader, int start, Amf0Token token, List<Object> references, StringCache stringCache) throws AmfException {
+        this.data = reader.getBuffer().duplicate();
+        this.parser = new Amf0Parser(data);
+        this.parser.setStringCache(stringCache);
+        this.stringCache = stringCache;
+        this.references = references;
+        this.base = references.size();
+        int[] stack = new int[INITIAL_SIZE];
+        int depth = 0;
+        int keyOffset = -1;
+        int keyLength = 0;
+        stack[depth++] = open(start, token);
+        while (depth > 0) {
+            int top = stack[depth - 1];
+            int position = reader.position();
+            Amf0Token next = reader.nextToken();
+            switch (next) {
+                case KEY:
+                    keyOffset = reader.getStringOffset();
+                    keyLength = reader.getStringLength();
+                    continue;
+                
+                case END_OBJECT:
+                case END_ECMA_ARRAY:
+                case END_STRICT_ARRAY:
+                    depth--;
+                    ends[top] = reader.position();
+                    counts[top] = size - top;
+                    if (!selfContained[top] && depth > 0) {
+                        selfContained[stack[depth - 1]] = false;
+                    }
+                    continue;
+            }
+            addEntry(top, keyOffset, keyLength, position);
+            keyOffset = -1;
+            switch (next) {
+                case START_OBJECT:
+                case START_TYPED_OBJECT:
+                case START_ECMA_ARRAY:
+                case START_STRICT_ARRAY:
+                    if (depth == stack.length) {
+                        stack = Arrays.copyOf(stack, depth * 2);
+                    }
+                    stack[depth++] = open(position, next);
+                    break;
+                
+                case REFERENCE:
+                    selfContained[top] = false;
+                    break;
+                
+                case AVMPLUS_OBJECT:
+                    selfContained[top] = false;
+                    if (null == amf3Values) {
+                        amf3Values = new HashMap<>();
+                    }
+                    amf3Values.put(position, reader.getAmf3Value());
+                    break;
+            }
+        }
+    }
+    
+    /**
+     * Get view of the walked value
+     * @return 
+     */
+    Object getRoot() {
+        return references.get(base);
+    }
+    
+    /**
+     * Get entries of object or array
+     * @param index
+     * @return 
+     */
+    int[] getEntries(int index) {
+        int[] entries = new int[entryCounts[index]];
+        int entry = firstEntries[index];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = entry;
+            entry = nextEntries[entry];
+        }
+        return entries;
+    }
+    
+    /**
+     * Get entry key
+     * @param entry
+     * @return 
+     */
+    String getKey(int entry) {
+        if (null != stringCache) {
+            return stringCache.get(data, keyOffsets[entry], keyLengths[entry]);
+        }
+        return Amf0Parser.decodeString(data, keyOffsets[entry], keyLengths[entry]);
+    }
+    
+    /**
+     * Compare entry key with the name without decoding the key
+     * @param entry
+     * @param name
+     * @return 
+     */
+    boolean keyEquals(int entry, String name) {
+        return Amf0Parser.equalsString(data, keyOffsets[entry], keyLengths[entry], name);
+    }
+    
+    /**
+     * Get entry value, decoded on first access
+     * @param entry
+     * @return 
+     */
+    Object getValue(int entry) {
+        if (null == values) {
+            values = new Object[entryCount];
+            Arrays.fill(values, NOT_DECODED);
+        }
+        Object value = values[entry];
+        if (value == NOT_DECODED) {
+            try {
+                value = decode(valueOffsets[entry]);
+            } catch (AmfException ex) {
+                throw new IllegalStateException("Unable to decode value: " + ex.getMessage(), ex);
+            }
+            values[entry] = value;
+        }
+        return value;
+    }
+    
+    /**
+     * Get encoded bytes of object or array
+     * @param index
+     * @return bytes or null if not self-contained
+     */
+    ByteBuffer getRawBytes(int index) {
+        if (!selfContained[index]) {
+            return null;
+        }
+        ByteBuffer slice = data.asReadOnlyBuffer();
+        slice.limit(ends[index]);
+        slice.position(starts[index]);
+        return slice.slice();
+    }
+    
+    /**
+     * Get number of objects and arrays inside object or array including
+     * itself
+     * @param index
+     * @return 
+     */
+    int getComplexCount(int index) {
+        return counts[index];
+    }
+    
+    /**
+     * Decode value
+     * @param offset
+     * @return
+     * @throws AmfException 
+     */
+    private Object decode(int offset) throws AmfException {
+        if (data.get(offset) == AmfTypes.AMF0_AVMPLUS_OBJECT) {
+            return amf3Values.get(offset);
+        }
+        Amf0Token token = parser.valueAt(offset);
+        switch (token) {
+            case NUMBER:
+                return parser.getDouble();
+            
+            case BOOLEAN:
+                return parser.getBoolean();
+            
+            case STRING:
+                return parser.getString();
+            
+            case DATE:
+                return parser.getDate();
+            
+            case XML_DOCUMENT:
+                return Xml.parse(data, parser.getStringOffset(), parser.getStringLength());
+            
+            case REFERENCE:
+                int key = parser.getReference();
+                if (key >= references.size() || references.get(key) == Amf0Reader.SKIPPED) {
+                    throw new AmfException("Invalid reference key: " + key);
+                }
+                return references.get(key);
+            
+            case START_OBJECT:
+            case START_TYPED_OBJECT:
+            case START_ECMA_ARRAY:
+            case START_STRICT_ARRAY:
+                return references.get(base + Arrays.binarySearch(starts, 0, size, offset));
+            
+            default:
+                return null;
+        }
+    }
+    
+    /**
+     * Register object or array and create its view
+     * @param start
+     * @param token
+     * @return index
+     */
+    private int open(int start, Amf0Token token) {
+        if (size == starts.length) {
+            int capacity = size * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            firstEntries = Arrays.copyOf(firstEntries, capacity);
+            lastEntries = Arrays.copyOf(lastEntries, capacity);
+            entryCounts = Arrays.copyOf(entryCounts, capacity);
+            selfContained = Arrays.copyOf(selfContained, capacity);
+        }
+        int index = size++;
+        starts[index] = start;
+        firstEntries[index] = -1;
+        selfContained[index] = true;
+        if (token == Amf0Token.START_STRICT_ARRAY) {
+            references.add(new LazyAmf0List(this, index));
+        } else {
+            references.add(new LazyAmf0Map(this, index));
+        }
+        return index;
+    }
+    
+    /**
+     * Add entry to object or array
+     * @param index
+     * @param keyOffset
+     * @param keyLength
+     * @param valueOffset 
+     */
+    private void addEntry(int index, int keyOffset, int keyLength, int valueOffset) {
+        if (entryCount == keyOffsets.length) {
+            int capacity = entryCount * 2;
+            keyOffsets = Arrays.copyOf(keyOffsets, capacity);
+            keyLengths = Arrays.copyOf(keyLengths, capacity);
+            valueOffsets = Arrays.copyOf(valueOffsets, capacity);
+            nextEntries = Arrays.copyOf(nextEntries, capacity);
+        }
+        int entry = entryCount++;
+        keyOffsets[entry] = keyOffset;
+        keyLengths[entry] = keyLength;
+        valueOffsets[entry] = valueOffset;
+        if (firstEntries[index] < 0) {
+            firstEntries[index] = entry;
+        } else {
+            nextEntries[lastEntries[index]] = entry;
+        }
+        lastEntries[index] = entry;
+        entryCounts[index]++;
+    }
+
+}
@@ -0,0 +1,31 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Lazy view over encoded AMF0 object or array
+ * 
+ * @author Gennadiy Kozlenko
+ */
+interface LazyAmf0Value {
+    
+    /**
+     * Get encoded bytes of the value
+     * @return bytes or null if value contains references or AMF3 values
+     * and can't be copied to another stream as is
+     */
+    ByteBuffer getRawBytes();
+    
+    /**
+     * Get number of objects and arrays in the encoded bytes including the
+     * value itself
+     * @return 
+     */
+    int getComplexCount();
+
+}
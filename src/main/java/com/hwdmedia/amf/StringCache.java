@@ -0,0 +1,159 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bounded cache of decoded strings. Strings are looked up by the hash of
+ * their raw UTF-8 bytes, so a hit returns existing String without decoding
+ * or allocation. Cache is thread safe and may be shared by readers.
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public final class StringCache {
+    
+    private static final int DEFAULT_MAX_LENGTH = 64;
+    
+    private final Entry[] entries;
+    
+    private final int mask;
+    
+    private final int maxLength;
+    
+    /**
+     * Class constructor
+     * @param capacity number of cached strings, rounded up to power of two
+     */
+    public StringCache(int capacity) {
+        this(capacity, DEFAULT_MAX_LENGTH);
+    }
+    
+    /**
+     * Class constructor
+     * @param capacity number of cached strings, rounded up to power of two
+     * @param maxLength max size in bytes of cached strings
+     */
+    public StringCache(int capacity, int maxLength) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.entries = new Entry[size];
+        this.mask = size - 1;
+        this.maxLength = maxLength;
+    }
+    
+    /**
+     * Get string of UTF-8 bytes
+     * @param data
+     * @param offset
+     * @param length
+     * @return 
+     */
+    public String get(ByteBuffer data, int offset, int length) {
+        if (length > maxLength) {
+            return Amf0Parser.decodeString(data, offset, length);
+        }
+        int hash = hash(data, offset, length);
+        // Two way lookup, recent entry is kept in the first slot
+        int first = hash & mask;
+        int second = (first + 1) & mask;
+        Entry entry = entries[first];
+        if (null != entry && entry.hash == hash && entry.matches(data, offset, length)) {
+            return entry.value;
+        }
+        Entry other = entries[second];
+        if (null != other && other.hash == hash && other.matches(data, offset, length)) {
+            return other.value;
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = data.get(offset + i);
+        }
+        Entry created = new Entry(hash, bytes, Amf0Parser.decodeString(data, offset, length));
+        if (null != entry) {
+            entries[second] = entry;
+        }
+        entries[first] = created;
+        return created.value;
+    }
+    
+    /**
+     * Calculate hash of bytes
+     * @param data
+     * @param offset
+     * @param length
+     * @return 
+     */
+    private static int hash(ByteBuffer data, int offset, int length) {
+        int hash = 0x811c9dc5;
+        if (data.hasArray()) {
+            byte[] array = data.array();
+            int start = data.arrayOffset() + offset;
+            for (int i = start, end = start + length; i < end; i++) {
+                hash = (hash ^ array[i]) * 0x01000193;
+            }
+        } else {
+            for (int i = offset, end = offset + length; i < end; i++) {
+                hash = (hash ^ data.get(i)) * 0x01000193;
+            }
+        }
+        return hash ^ (hash >>> 16);
+    }
+    
+    /**
+     * Cache entry
+     */
+    private static final class Entry {
+        
+        private final int hash;
+        
+        private final byte[] bytes;
+        
+        private final String value;
+        
+        /**
+         * Class constructor
+         * @param hash
+         * @param bytes
+         * @param value 
+         */
+        Entry(int hash, byte[] bytes, String value) {
+            this.hash = hash;
+            this.bytes = bytes;
+            this.value = value;
+        }
+        
+        /**
+         * Check entry bytes match the given ones
+         * @param data
+         * @param offset
+         * @param length
+         * @return 
+         */
+        boolean matches(ByteBuffer data, int offset, int length) {
+            if (bytes.length != length) {
+                return false;
+            }
+            if (data.hasArray()) {
+                byte[] array = data.array();
+                int start = data.arrayOffset() + offset;
+                for (int i = 0; i < length; i++) {
+                    if (bytes[i] != array[start + i]) {
+                        return false;
+                    }
+                }
+            } else {
+                for (int i = 0; i < length; i++) {
+                    if (bytes[i] != data.get(offset + i)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    
+    }
+
+}
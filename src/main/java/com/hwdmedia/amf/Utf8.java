@@ -0,0 +1,92 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+import java.nio.ByteBuffer;
+
+/**
+ * UTF-8 encoder writing directly into buffers
+ * 
+ * Surrogate pairs are encoded as 4-byte sequences, unpaired surrogates are
+ * replaced by '?' as String.getBytes does.
+ * 
+ * @author Gennadiy Kozlenko
+ */
+final class Utf8 {
+    
+    private Utf8() {
+    }
+    
+    /**
+     * Get size of the encoded string
+     * @param value
+     * @return 
+     */
+    static long encodedLength(String value) {
+        int length = value.length();
+        long utflen = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                utflen += 1;
+            } else if (!Character.isSurrogate(c)) {
+                utflen += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                utflen += 2;
+                i++;
+            }
+        }
+        return utflen;
+    }
+    
+    /**
+     * Encode string into the buffer, buffer must have enough space
+     * @param value
+     * @param buffer 
+     */
+    static void encode(String value, ByteBuffer buffer) {
+        int length = value.length();
+        int i = 0;
+        // ASCII prefix
+        if (buffer.hasArray()) {
+            byte[] array = buffer.array();
+            int offset = buffer.arrayOffset() + buffer.position();
+            for (char c; i < length && (c = value.charAt(i)) < 0x80; i++) {
+                array[offset + i] = (byte) c;
+            }
+            buffer.position(buffer.position() + i);
+        } else {
+            for (char c; i < length && (c = value.charAt(i)) < 0x80; i++) {
+                buffer.put((byte) c);
+            }
+        }
+        for (; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (!Character.isSurrogate(c)) {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else {
+                buffer.put((byte) '?');
+            }
+        }
+    }
+
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * XML documents parsing and serialization
+ * 
+ * Factories are looked up once and used under their own lock. Document
+ * builders and transformers are not thread-safe, so they are cached per
+ * thread and reset after each use.
+ * 
+ * @author Gennadiy Kozlenko
+ */
+final class Xml {
+    
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
+    
+    private static final TransformerFactory TRANSFORMER_FACTORY = TransformerFactory.newInstance();
+    
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+    
+    private static final ThreadLocal<DocumentBuilder> BUILDERS = new ThreadLocal<DocumentBuilder>() {
+        @Override
+        protected DocumentBuilder initialValue() {
+            synchronized (DOCUMENT_BUILDER_FACTORY) {
+                try {
+                    return DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+                } catch (ParserConfigurationException ex) {
+                    throw new IllegalStateException("Can't create document builder", ex);
+                }
+            }
+        }
+    };
+    
+    private static final ThreadLocal<Transformer> TRANSFORMERS = new ThreadLocal<Transformer>() {
+        @Override
+        protected Transformer initialValue() {
+            synchronized (TRANSFORMER_FACTORY) {
+                try {
+                    return TRANSFORMER_FACTORY.newTransformer();
+                } catch (TransformerConfigurationException ex) {
+                    throw new IllegalStateException("Can't create transformer", ex);
+                }
+            }
+        }
+    };
+    
+    private Xml() {
+    }
+    
+    /**
+     * Parse XML document
+     * @param xml
+     * @return
+     * @throws AmfException 
+     */
+    static Document parse(String xml) throws AmfException {
+        return parse(new InputSource(new StringReader(xml)));
+    }
+    
+    /**
+     * Parse UTF-8 encoded XML document
+     * @param bytes
+     * @return
+     * @throws AmfException 
+     */
+    static Document parse(byte[] bytes) throws AmfException {
+        return parse(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+    
+    /**
+     * Parse UTF-8 encoded XML document from the buffer
+     * @param data
+     * @param offset
+     * @param length
+     * @return
+     * @throws AmfException 
+     */
+    static Document parse(ByteBuffer data, int offset, int length) throws AmfException {
+        InputStream stream;
+        if (data.hasArray()) {
+            stream = new ByteArrayInputStream(data.array(), data.arrayOffset() + offset, length);
+        } else {
+            byte[] bytes = new byte[length];
+            ByteBuffer slice = data.duplicate();
+            slice.position(offset);
+            slice.get(bytes);
+            stream = new ByteArrayInputStream(bytes);
+        }
+        InputSource source = new InputSource(stream);
+        source.setEncoding("UTF-8");
+        return parse(source);
+    }
+    
+    /**
+     * Parse XML document
+     * @param source
+     * @return
+     * @throws AmfException 
+     */
+    private static Document parse(InputSource source) throws AmfException {
+        DocumentBuilder builder = BUILDERS.get();
+        try {
+            return builder.parse(source);
+        } catch (SAXException | IOException ex) {
+            throw new AmfException("Can't parse xml document", ex);
+        } finally {
+            builder.reset();
+        }
+    }
+    
+    /**
+     * Create streaming reader of UTF-8 encoded XML document
+     * @param bytes
+     * @return
+     * @throws AmfException 
+     */
+    static XMLStreamReader createStreamReader(byte[] bytes) throws AmfException {
+        synchronized (INPUT_FACTORY) {
+            try {
+                return INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(bytes), "UTF-8");
+            } catch (XMLStreamException ex) {
+                throw new AmfException("Can't read xml document", ex);
+            }
+        }
+    }
+    
+    /**
+     * Transform XML document to string
+     * @param value
+     * @return
+     * @throws AmfException 
+     */
+    static String transform(Document value) throws AmfException {
+        StringWriter writer = new StringWriter();
+        Transformer transformer = TRANSFORMERS.get();
+        try {
+            transformer.transform(new DOMSource(value), new StreamResult(writer));
+        } catch (TransformerException ex) {
+            throw new AmfException("Can't transform xml document", ex);
+        } finally {
+            transformer.reset();
+        }
+        return writer.toString();
+    }
+
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+import java.nio.ByteBuffer;
+import javax.xml.stream.XMLStreamReader;
+import org.w3c.dom.Document;
+
+/**
+ * XML document kept in its encoded form
+ * 
+ * Document is decoded or parsed only when requested, large documents can be
+ * streamed with StAX without building the DOM tree. Written back as is.
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public final class XmlDocument {
+    
+    private byte[] bytes;
+    
+    private String source;
+    
+    private Document document;
+    
+    /**
+     * Class constructor
+     * @param source 
+     */
+    public XmlDocument(String source) {
+        this.source = source;
+    }
+    
+    /**
+     * Class constructor
+     * @param bytes UTF-8 encoded document
+     */
+    XmlDocument(byte[] bytes) {
+        this.bytes = bytes;
+    }
+    
+    /**
+     * Get document source
+     * @return 
+     */
+    public String getSource() {
+        if (null == source) {
+            source = Amf0Parser.decodeString(ByteBuffer.wrap(bytes), 0, bytes.length);
+        }
+        return source;
+    }
+    
+    /**
+     * Get parsed document, parsed on first call
+     * @return
+     * @throws AmfException 
+     */
+    public Document getDocument() throws AmfException {
+        if (null == document) {
+            document = null == bytes ? Xml.parse(source) : Xml.parse(bytes);
+        }
+        return document;
+    }
+    
+    /**
+     * Create StAX reader of the document
+     * @return
+     * @throws AmfException 
+     */
+    public XMLStreamReader createStreamReader() throws AmfException {
+        return Xml.createStreamReader(getBytes());
+    }
+    
+    /**
+     * Get UTF-8 encoded document
+     * @return 
+     */
+    byte[] getBytes() {
+        if (null == bytes) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Utf8.encodedLength(source));
+            Utf8.encode(source, buffer);
+            bytes = buffer.array();
+        }
+        return bytes;
+    }
+    
+    @Override
+    public String toString() {
+        return getSource();
+    }
+
+}
@@ -0,0 +1,24 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+/**
+ * How XML documents are read
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public enum XmlMode {
+    
+    // Parsed org.w3c.dom.Document
+    DOCUMENT,
+    
+    // Document source string
+    STRING,
+    
+    // XmlDocument parsed or streamed on demand
+    LAZY
+
+}
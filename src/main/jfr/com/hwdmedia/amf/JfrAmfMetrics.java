@@ -0,0 +1,161 @@
+/**
+ * Copyright © 2013 HWD Media
+ * 
+ * This file is part of hwdmedia-amf - AMF reader/writer library.
+ */
+package com.hwdmedia.amf;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Metrics reported as JDK Flight Recorder events
+ * 
+ * Events are committed only while they are enabled in a recording. Class
+ * requires Java 11 or later and is built by the jfr profile only.
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public final class JfrAmfMetrics implements AmfMetrics {
+    
+    @Name("com.hwdmedia.amf.Decode")
+    @Label("AMF Decode")
+    @Category("AMF")
+    @Description("Top level AMF value read")
+    static final class DecodeEvent extends Event {
+        
+        @Label("Type Marker")
+        int typeMarker;
+        
+        @Label("Size")
+        @DataAmount
+        int bytes;
+        
+        @Label("Depth")
+        int depth;
+        
+        @Label("Time")
+        @Timespan
+        long time;
+    
+    }
+    
+    @Name("com.hwdmedia.amf.Encode")
+    @Label("AMF Encode")
+    @Category("AMF")
+    @Description("Top level AMF value written")
+    static final class EncodeEvent extends Event {
+        
+        @Label("Type Marker")
+        int typeMarker;
+        
+        @Label("Size")
+        @DataAmount
+        int bytes;
+        
+        @Label("Time")
+        @Timespan
+        long time;
+    
+    }
+    
+    @Name("com.hwdmedia.amf.Error")
+    @Label("AMF Error")
+    @Category("AMF")
+    @Description("AMF value reading or writing failed")
+    static final class ErrorEvent extends Event {
+        
+        @Label("Encoding")
+        boolean encoding;
+        
+        @Label("Exception")
+        Class<?> exception;
+        
+        @Label("Message")
+        String message;
+    
+    }
+    
+    private final AmfMetrics next;
+    
+    /**
+     * Class constructor
+     */
+    public JfrAmfMetrics() {
+        this(null);
+    }
+    
+    /**
+     * Class constructor
+     * @param next metrics also reported to, e.g. AmfCounters
+     */
+    public JfrAmfMetrics(AmfMetrics next) {
+        this.next = next;
+    }
+    
+    @Override
+    public void decoded(int typeMarker, int bytes, int depth, long nanos) {
+        DecodeEvent event = new DecodeEvent();
+        if (event.shouldCommit()) {
+            event.typeMarker = typeMarker;
+            event.bytes = bytes;
+            event.depth = depth;
+            event.time = nanos;
+            event.commit();
+        }
+        if (null != next) {
+            next.decoded(typeMarker, bytes, depth, nanos);
+        }
+    }
+    
+    @Override
+    public void encoded(int typeMarker, int bytes, long nanos) {
+        EncodeEvent event = new EncodeEvent();
+        if (event.shouldCommit()) {
+            event.typeMarker = typeMarker;
+            event.bytes = bytes;
+            event.time = nanos;
+            event.commit();
+        }
+        if (null != next) {
+            next.encoded(typeMarker, bytes, nanos);
+        }
+    }
+    
+    @Override
+    public void decodeFailed(Exception error) {
+        failed(false, error);
+        if (null != next) {
+            next.decodeFailed(error);
+        }
+    }
+    
+    @Override
+    public void encodeFailed(Exception error) {
+        failed(true, error);
+        if (null != next) {
+            next.encodeFailed(error);
+        }
+    }
+    
+    /**
+     * Commit error event
+     * @param encoding
+     * @param error 
+     */
+    private static void failed(boolean encoding, Exception error) {
+        ErrorEvent event = new ErrorEvent();
+        if (event.shouldCommit()) {
+            event.encoding = encoding;
+            event.exception = error.getClass();
+            event.message = error.getMessage();
+            event.commit();
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.hwdmedia.amf;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import junit.framework.TestCase;
+
+/**
+ * AMF0 batch decoder test case
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public class Amf0BatchDecoderTest extends TestCase {
+    
+    public Amf0BatchDecoderTest(String testName) {
+        super(testName);
+    }
+    
+    /**
+     * Test messages are decoded in order with failures reported per message
+     * @throws Exception 
+     */
+    public void testDecode() throws Exception {
+        // Writing
+        List<ByteBuffer> messages = new ArrayList<>();
+        List<Map<String, Object>> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Map<String, Object> object = new LinkedHashMap<>();
+            object.put("id", (double) i);
+            object.put("items", Arrays.asList("item" + i, "item" + i));
+            object.put("self", object.get("items"));
+            try (Amf0Writer writer = new Amf0Writer()) {
+                writer.write("message");
+                writer.write(object);
+                ByteBuffer message = writer.getByteBuffer();
+                if (i % 100 == 99) {
+                    // Corrupt message
+                    message.limit(message.limit() - 5);
+                }
+                messages.add(message);
+            }
+            expected.add(object);
+        }
+        // Reading
+        for (Amf0BatchDecoder decoder: new Amf0BatchDecoder[] {new Amf0BatchDecoder(), new Amf0BatchDecoder(new ForkJoinPool(3))}) {
+            try {
+                List<Amf0BatchDecoder.Result> results = decoder.decode(messages);
+                assertEquals("Check size", results.size(), 1000);
+                for (int i = 0; i < 1000; i++) {
+                    Amf0BatchDecoder.Result result = results.get(i);
+                    if (i % 100 == 99) {
+                        assertFalse("Check failed", result.isSuccess());
+                        assertTrue("Check error", null != result.getError());
+                    } else {
+                        assertTrue("Check success", result.isSuccess());
+                        assertEquals("Check values", result.getValues(), Arrays.asList("message", expected.get(i)));
+                    }
+                }
+                assertEquals("Check position", messages.get(0).position(), 0);
+            } finally {
+                decoder.close();
+            }
+        }
+    }
+    
+    /**
+     * Test message nested deeper than the stack fails alone
+     * @throws Exception 
+     */
+    public void testDeepNesting() throws Exception {
+        // Writing
+        ByteBuffer deep = ByteBuffer.allocate(1000000 * 5 + 1);
+        while (deep.remaining() > 1) {
+            deep.put(AmfTypes.AMF0_STRICT_ARRAY).putInt(1);
+        }
+        deep.put(AmfTypes.AMF0_NULL);
+        deep.flip();
+        ByteBuffer message;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.write("message");
+            message = writer.getByteBuffer();
+        }
+        // Reading
+        try (Amf0BatchDecoder decoder = new Amf0BatchDecoder()) {
+            List<Amf0BatchDecoder.Result> results = decoder.decode(Arrays.asList(message, deep, message));
+            assertTrue("Check success", results.get(0).isSuccess());
+            assertFalse("Check failed", results.get(1).isSuccess());
+            assertTrue("Check error", results.get(1).getError() instanceof AmfException);
+            assertEquals("Check values", results.get(2).getValues(), Arrays.asList("message"));
+        }
+    }
+
+}
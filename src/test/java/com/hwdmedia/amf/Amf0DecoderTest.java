@@ -0,0 +1,96 @@
+package com.hwdmedia.amf;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import static junit.framework.Assert.assertEquals;
+import junit.framework.TestCase;
+
+/**
+ * AMF0 incremental decoder test case
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public class Amf0DecoderTest extends TestCase {
+    
+    public Amf0DecoderTest(String testName) {
+        super(testName);
+    }
+    
+    /**
+     * Test decoding data fed byte by byte
+     * @throws Exception 
+     */
+    public void testByteByByte() throws Exception {
+        // Writing
+        List<Object> list = new ArrayList<>();
+        list.add(1.0);
+        list.add("강남스타일");
+        list.add(new Date());
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("code", "NetStream.Play.Start");
+        map.put("list", list);
+        map.put("same", list);
+        map.put("empty", new LinkedHashMap<>());
+        List<Object> actuals = new ArrayList<>();
+        actuals.add("onStatus");
+        actuals.add(0.0);
+        actuals.add(null);
+        actuals.add(map);
+        actuals.add(true);
+        actuals.add(list);
+        byte[] data;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            for (int i = 0; i < 5; i++) {
+                writer.write(actuals.get(i));
+            }
+            writer.writeAmf3(list);
+            data = writer.getBytes();
+        }
+        // Reading
+        Amf0Decoder decoder = new Amf0Decoder();
+        List<Object> expected = new ArrayList<>();
+        for (int i = 0; i < data.length; i++) {
+            decoder.feed(data, i, 1);
+            while (decoder.decode() == Amf0Decoder.Status.VALUE_READY) {
+                expected.add(decoder.getValue());
+            }
+        }
+        assertEquals("Check value", expected, actuals);
+        assertEquals("Check status", decoder.decode(), Amf0Decoder.Status.NEED_MORE_INPUT);
+    }
+    
+    /**
+     * Test decoding data fed in large chunks
+     * @throws Exception 
+     */
+    public void testChunks() throws Exception {
+        // Writing
+        String longText = "";
+        for (int i = 0; i < 5000; i++) {
+            longText += "Long string ";
+        }
+        byte[] data;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.write(longText);
+            writer.write(longText);
+            data = writer.getBytes();
+        }
+        // Reading
+        Amf0Decoder decoder = new Amf0Decoder();
+        ByteBuffer chunk = ByteBuffer.wrap(data, 0, 40000);
+        decoder.feed(chunk);
+        assertEquals("Check status", decoder.decode(), Amf0Decoder.Status.NEED_MORE_INPUT);
+        decoder.feed(data, 40000, 40000);
+        assertEquals("Check status", decoder.decode(), Amf0Decoder.Status.VALUE_READY);
+        assertEquals("Check value", decoder.getValue(), longText);
+        assertEquals("Check status", decoder.decode(), Amf0Decoder.Status.NEED_MORE_INPUT);
+        decoder.feed(data, 80000, data.length - 80000);
+        assertEquals("Check status", decoder.decode(), Amf0Decoder.Status.VALUE_READY);
+        assertEquals("Check value", decoder.getValue(), longText);
+    }
+
+}
@@ -0,0 +1,137 @@
+package com.hwdmedia.amf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import junit.framework.TestCase;
+
+/**
+ * AMF0 encode cache test case
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public class Amf0EncodeCacheTest extends TestCase {
+    
+    public Amf0EncodeCacheTest(String testName) {
+        super(testName);
+    }
+    
+    /**
+     * Test cached values are written as encoded directly
+     * @throws Exception
+     */
+    public void testCache() throws Exception {
+        Map<String, Object> capabilities = new LinkedHashMap<>();
+        capabilities.put("fmsVer", "FMS/3,5,7,7009");
+        capabilities.put("capabilities", 31.0);
+        capabilities.put("codecs", Arrays.asList("h264", "aac"));
+        Amf0EncodeCache.Value immutable = Amf0EncodeCache.immutable(capabilities);
+        List<Object> shared = new ArrayList<>();
+        shared.add("shared");
+        // Writing
+        Amf0EncodeCache cache = new Amf0EncodeCache(16, 1024);
+        byte[] expected;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.write(capabilities);
+            writer.write(shared);
+            writer.write(shared);
+            expected = writer.getBytes();
+        }
+        for (int i = 0; i < 3; i++) {
+            try (Amf0Writer writer = new Amf0Writer()) {
+                writer.setEncodeCache(cache);
+                writer.write(immutable);
+                writer.write(shared);
+                writer.write(shared);
+                assertTrue("Check bytes", Arrays.equals(writer.getBytes(), expected));
+            }
+        }
+        assertEquals("Check hits", cache.getHitCount(), 2);
+        assertEquals("Check misses", cache.getMissCount(), 1);
+        // Caller supplied key
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.setEncodeCache(cache);
+            writer.write(Amf0EncodeCache.immutable("capabilities", capabilities));
+            writer.write(Amf0EncodeCache.immutable("capabilities", null));
+            Amf0Reader reader = new Amf0Reader(writer.getByteBuffer());
+            assertEquals("Check value", reader.read(), capabilities);
+            assertEquals("Check value", reader.read(), capabilities);
+        }
+        assertEquals("Check hits", cache.getHitCount(), 3);
+        // Values with references are not copied
+        Map<String, Object> references = new LinkedHashMap<>();
+        references.put("first", shared);
+        references.put("second", shared);
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.setEncodeCache(cache);
+            writer.write(Amf0EncodeCache.immutable(references));
+            writer.write(Amf0EncodeCache.immutable(references));
+            Amf0Reader reader = new Amf0Reader(writer.getByteBuffer());
+            assertEquals("Check value", reader.read(), references);
+            assertEquals("Check value", reader.read(), references);
+        }
+        assertEquals("Check hits", cache.getHitCount(), 3);
+        assertEquals("Check size", cache.getEncodedSize(), 2L * (expected.length - 28));
+    }
+    
+    /**
+     * Test least recently used values eviction
+     * @throws Exception
+     */
+    public void testEviction() throws Exception {
+        Amf0EncodeCache cache = new Amf0EncodeCache(2, 1024);
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.setEncodeCache(cache);
+            for (String key: new String[] {"a", "b", "a", "c", "a", "b"}) {
+                writer.write(Amf0EncodeCache.immutable(key, Arrays.asList(key)));
+            }
+        }
+        assertEquals("Check hits", cache.getHitCount(), 2);
+        assertEquals("Check misses", cache.getMissCount(), 4);
+        assertEquals("Check evictions", cache.getEvictionCount(), 2);
+        assertEquals("Check size", cache.size(), 2);
+    }
+    
+    /**
+     * Test value not copied from the cache is encoded once and AMF3 writes
+     * the value itself
+     * @throws Exception
+     */
+    public void testMissAndAmf3() throws Exception {
+        final List<Object> shared = new ArrayList<>();
+        shared.add("shared");
+        final int[] encodes = new int[1];
+        Map<String, Object> references = new LinkedHashMap<String, Object>() {
+            @Override
+            public Set<String> keySet() {
+                encodes[0]++;
+                return super.keySet();
+            }
+        };
+        references.put("first", shared);
+        references.put("second", shared);
+        Amf0EncodeCache cache = new Amf0EncodeCache(16, 1024);
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.setEncodeCache(cache);
+            writer.write(Amf0EncodeCache.immutable(references));
+            assertEquals("Check encodes", encodes[0], 1);
+            assertEquals("Check value", new Amf0Reader(writer.getByteBuffer()).read(), references);
+        }
+        // AMF3
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.setEncodeCache(cache);
+            writer.setAmf3(true);
+            writer.write(Amf0EncodeCache.immutable(shared));
+            writer.write(Arrays.asList(Amf0EncodeCache.immutable(shared)));
+            Amf0Reader reader = new Amf0Reader(writer.getByteBuffer());
+            assertEquals("Check value", reader.read(), shared);
+            assertEquals("Check value", reader.read(), Arrays.asList(shared));
+        }
+    }
+
+}
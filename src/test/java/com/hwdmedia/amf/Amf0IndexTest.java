@@ -0,0 +1,107 @@
+package com.hwdmedia.amf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import static junit.framework.Assert.assertEquals;
+import junit.framework.TestCase;
+
+/**
+ * AMF0 index test case
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public class Amf0IndexTest extends TestCase {
+    
+    public Amf0IndexTest(String testName) {
+        super(testName);
+    }
+    
+    /**
+     * Test random access to appended values
+     * @throws Exception
+     */
+    public void testIndex() throws Exception {
+        File file = File.createTempFile("amf0", ".bin");
+        File indexFile = new File(file.getPath() + ".idx");
+        file.deleteOnExit();
+        indexFile.deleteOnExit();
+        // Writing
+        byte[] tail;
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            for (int i = 0; i < 1000; i++) {
+                out.write(encode(i));
+            }
+            // Value written partially
+            tail = encode(1000);
+            out.write(tail, 0, tail.length / 2);
+        }
+        // Indexing
+        try (Amf0Index index = new Amf0Index(file)) {
+            assertEquals("Check size", index.size(), 1000);
+            assertEquals("Check offset", index.getOffset(0), 0L);
+            assertEquals("Check value", index.read(999), value(999));
+            assertEquals("Check value", index.read(500), value(500));
+            ByteBuffer data = index.getValue(7);
+            assertEquals("Check length", data.remaining(), encode(7).length);
+            index.save(indexFile);
+            // Appending
+            try (FileOutputStream out = new FileOutputStream(file, true)) {
+                out.write(tail, tail.length / 2, tail.length - tail.length / 2);
+                out.write(encode(1001));
+            }
+            assertEquals("Check update", index.update(), 2);
+            assertEquals("Check value", index.read(1001), value(1001));
+        }
+        // Loading
+        try (Amf0Index index = new Amf0Index(file, indexFile)) {
+            assertEquals("Check size", index.size(), 1002);
+            assertEquals("Check value", index.read(1000), value(1000));
+            assertEquals("Check value", index.read(3), value(3));
+            index.save(indexFile);
+        }
+        try (Amf0Index index = new Amf0Index(file, indexFile)) {
+            assertEquals("Check value", index.read(1001), value(1001));
+        }
+        // Replacing
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            for (int i = 0; i < 1200; i++) {
+                out.write(encode(i + 5000));
+            }
+        }
+        try (Amf0Index index = new Amf0Index(file, indexFile)) {
+            assertEquals("Check size", index.size(), 1200);
+            assertEquals("Check value", index.read(1001), value(6001));
+        }
+    }
+    
+    /**
+     * Create value
+     * @param i
+     * @return
+     */
+    private static Map<String, Object> value(int i) {
+        Map<String, Object> value = new LinkedHashMap<>();
+        value.put("id", (double) i);
+        value.put("name", "Message " + i);
+        value.put("items", Arrays.asList((double) i, "item"));
+        return value;
+    }
+    
+    /**
+     * Encode value
+     * @param i
+     * @return
+     * @throws Exception
+     */
+    private static byte[] encode(int i) throws Exception {
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.write(value(i));
+            return writer.getBytes();
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.hwdmedia.amf;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+import junit.framework.TestCase;
+
+/**
+ * AMF0 to JSON transcoder test case
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public class Amf0JsonTranscoderTest extends TestCase {
+    
+    public Amf0JsonTranscoderTest(String testName) {
+        super(testName);
+    }
+    
+    /**
+     * Test AMF0 to JSON
+     * @throws Exception
+     */
+    public void testToJson() throws Exception {
+        // Writing
+        List<Object> items = new ArrayList<>();
+        items.add(1);
+        items.add(-2.5);
+        Map<String, Object> actual = new LinkedHashMap<>();
+        actual.put("name", "Quote \" and\nline\u0001");
+        actual.put("flag", true);
+        actual.put("nothing", null);
+        actual.put("date", new Date(1380000000000L));
+        actual.put("items", items);
+        actual.put("same", items);
+        actual.put("self", actual);
+        actual.put("unicode", "Элемент 😀");
+        ByteBuffer data;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.write(actual);
+            writer.write(Double.NaN);
+            writer.write(12345678.0);
+            data = writer.getByteBuffer();
+        }
+        // Transcoding
+        String expected = "{\"name\":\"Quote \\\" and\\nline\\u0001\",\"flag\":true,\"nothing\":null,"
+                + "\"date\":1380000000000,\"items\":[1,-2.5],\"same\":[1,-2.5],\"self\":null,"
+                + "\"unicode\":\"Элемент 😀\"}\nnull\n12345678\n";
+        try (Amf0JsonTranscoder transcoder = new Amf0JsonTranscoder()) {
+            transcoder.toJson(data.duplicate());
+            assertEquals("Check JSON", new String(transcoder.getBytes(), StandardCharsets.UTF_8), expected);
+            transcoder.reset();
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            transcoder.toJson(data.duplicate(), stream);
+            assertEquals("Check JSON", stream.toString("UTF-8"), expected);
+            assertEquals("Check size", transcoder.size(), 0);
+            // Values of several calls are separated too
+            transcoder.toJson(data.duplicate());
+            transcoder.toJson(data.duplicate());
+            assertEquals("Check JSON", new String(transcoder.getBytes(), StandardCharsets.UTF_8), expected + expected);
+        }
+    }
+    
+    /**
+     * Test JSON to AMF0
+     * @throws Exception
+     */
+    public void testToAmf() throws Exception {
+        String json = " {\"text\": \"A\\u0041\\n\\/\\ud83d\\ude00\\ud800\", \"numbers\": [0, -0.25, 1.5e3, 12345678901234567890, 1E-400],\n"
+                + "\"empty\": {}, \"none\": [], \"nested\": [[true, false], {\"null\": null}]}\n\"second\"";
+        byte[] bytes;
+        try (Amf0JsonTranscoder transcoder = new Amf0JsonTranscoder()) {
+            transcoder.toAmf(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)));
+            bytes = transcoder.getBytes();
+        }
+        // Reading
+        Amf0Reader reader = new Amf0Reader(bytes);
+        Map<String, Object> expected = (Map<String, Object>) reader.read();
+        assertEquals("Check value", expected.get("text"), "AA\n/😀?");
+        assertEquals("Check value", expected.get("numbers"), Arrays.asList(0.0, -0.25, 1500.0, 12345678901234567890.0, 0.0));
+        assertEquals("Check value", expected.get("empty"), new LinkedHashMap<>());
+        assertEquals("Check value", expected.get("none"), new ArrayList<>());
+        Map<String, Object> inner = new LinkedHashMap<>();
+        inner.put("null", null);
+        assertEquals("Check value", expected.get("nested"), Arrays.asList(Arrays.asList(true, false), inner));
+        assertEquals("Check value", reader.read(), "second");
+        // Malformed JSON
+        for (String value: new String[] {"[1,]", "{\"a\" 1}", "\"open", "tru", "[1", "-"}) {
+            try (Amf0JsonTranscoder transcoder = new Amf0JsonTranscoder()) {
+                transcoder.toAmf(ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8)));
+                fail("Exception expected for " + value);
+            } catch (AmfException ex) {
+                // Expected
+            }
+        }
+    }
+    
+    /**
+     * Test top level values are written to the stream by chunks
+     * @throws Exception
+     */
+    public void testToJsonChunks() throws Exception {
+        ByteBuffer data;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            for (int i = 0; i < 10000; i++) {
+                writer.write(12345678.0);
+            }
+            data = writer.getByteBuffer();
+        }
+        final List<Integer> chunks = new ArrayList<>();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] bytes, int offset, int length) {
+                chunks.add(length);
+                super.write(bytes, offset, length);
+            }
+        };
+        try (Amf0JsonTranscoder transcoder = new Amf0JsonTranscoder()) {
+            transcoder.toJson(data, stream);
+        }
+        assertEquals("Check size", stream.size(), 10000 * 9);
+        assertTrue("Check chunks", chunks.size() > 1);
+    }
+
+}
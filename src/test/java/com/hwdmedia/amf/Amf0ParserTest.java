@@ -0,0 +1,241 @@
+package com.hwdmedia.amf;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import junit.framework.TestCase;
+
+/**
+ * AMF0 parser test case
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public class Amf0ParserTest extends TestCase {
+    
+    public Amf0ParserTest(String testName) {
+        super(testName);
+    }
+    
+    /**
+     * Test scalar tokens
+     * @throws Exception 
+     */
+    public void testScalars() throws Exception {
+        // Writing
+        Date date = new Date();
+        ByteBuffer data;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.write(123.5);
+            writer.write(true);
+            writer.write("Русские символы");
+            writer.write(null);
+            writer.write(date);
+            data = writer.getByteBuffer();
+        }
+        // Reading
+        Amf0Parser parser = new Amf0Parser(data);
+        assertEquals("Check token", Amf0Token.NUMBER, parser.nextToken());
+        assertEquals("Check value", 123.5, parser.getDouble());
+        assertEquals("Check token", Amf0Token.BOOLEAN, parser.nextToken());
+        assertEquals("Check value", true, parser.getBoolean());
+        assertEquals("Check token", Amf0Token.STRING, parser.nextToken());
+        assertEquals("Check value", "Русские символы", parser.getString());
+        assertEquals("Check token", Amf0Token.NULL, parser.nextToken());
+        assertEquals("Check token", Amf0Token.DATE, parser.nextToken());
+        assertEquals("Check value", date, parser.getDate());
+        assertFalse("Check end", parser.hasNext());
+        assertNull("Check end", parser.nextToken());
+    }
+    
+    /**
+     * Test container tokens
+     * @throws Exception 
+     */
+    public void testContainers() throws Exception {
+        // Writing
+        Map<String, Object> actual = new LinkedHashMap<>();
+        List<Object> list = new ArrayList<>();
+        list.add(1.0);
+        list.add("two");
+        actual.put("code", "NetStream.Play.Start");
+        actual.put("list", list);
+        ByteBuffer data;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.write(actual);
+            writer.write(5.0);
+            data = writer.getByteBuffer();
+        }
+        // Reading
+        Amf0Parser parser = new Amf0Parser(data);
+        assertEquals("Check token", Amf0Token.START_ECMA_ARRAY, parser.nextToken());
+        assertEquals("Check count", 2, parser.getCount());
+        assertEquals("Check token", Amf0Token.KEY, parser.nextToken());
+        assertEquals("Check key", "code", parser.getString());
+        assertEquals("Check token", Amf0Token.STRING, parser.nextToken());
+        assertEquals("Check value", "NetStream.Play.Start", parser.getString());
+        assertEquals("Check token", Amf0Token.KEY, parser.nextToken());
+        assertEquals("Check key", "list", parser.getString());
+        assertEquals("Check token", Amf0Token.START_STRICT_ARRAY, parser.nextToken());
+        assertEquals("Check depth", 2, parser.getDepth());
+        assertEquals("Check token", Amf0Token.NUMBER, parser.nextToken());
+        assertEquals("Check token", Amf0Token.STRING, parser.nextToken());
+        assertEquals("Check token", Amf0Token.END_STRICT_ARRAY, parser.nextToken());
+        assertEquals("Check token", Amf0Token.END_ECMA_ARRAY, parser.nextToken());
+        assertEquals("Check depth", 0, parser.getDepth());
+        assertEquals("Check token", Amf0Token.NUMBER, parser.nextToken());
+        assertEquals("Check value", 5.0, parser.getDouble());
+    }
+    
+    /**
+     * Test object and terminated ECMA array
+     * @throws Exception 
+     */
+    public void testObjectEnd() throws Exception {
+        byte[] data = {
+            AmfTypes.AMF0_OBJECT, 0, 1, 'a', AmfTypes.AMF0_BOOLEAN, 1, 0, 0, AmfTypes.AMF0_OBJECT_END,
+            AmfTypes.AMF0_ECMA_ARRAY, 0, 0, 0, 0, 0, 0, AmfTypes.AMF0_OBJECT_END,
+            AmfTypes.AMF0_NULL
+        };
+        Amf0Parser parser = new Amf0Parser(data);
+        assertEquals("Check token", Amf0Token.START_OBJECT, parser.nextToken());
+        assertEquals("Check token", Amf0Token.KEY, parser.nextToken());
+        assertEquals("Check token", Amf0Token.BOOLEAN, parser.nextToken());
+        assertEquals("Check token", Amf0Token.END_OBJECT, parser.nextToken());
+        assertEquals("Check token", Amf0Token.START_ECMA_ARRAY, parser.nextToken());
+        assertEquals("Check token", Amf0Token.END_ECMA_ARRAY, parser.nextToken());
+        assertEquals("Check token", Amf0Token.NULL, parser.nextToken());
+        assertFalse("Check end", parser.hasNext());
+    }
+    
+    /**
+     * Test keys are shared through the string cache
+     * @throws Exception 
+     */
+    public void testStringCache() throws Exception {
+        // Writing
+        Map<String, Object> actual = new LinkedHashMap<>();
+        actual.put("code", "NetConnection.Connect.Success");
+        actual.put("level", "status");
+        ByteBuffer data;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.write(actual);
+            data = writer.getByteBuffer();
+        }
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.remaining());
+        direct.put(data.duplicate()).flip();
+        // Reading
+        StringCache cache = new StringCache(256);
+        Amf0Reader first = new Amf0Reader(data);
+        first.setStringCache(cache);
+        Amf0Reader second = new Amf0Reader(direct);
+        second.setStringCache(cache);
+        Map expected = (Map) first.read();
+        Map cached = (Map) second.read();
+        assertEquals("Check value", expected, actual);
+        assertEquals("Check value", cached, actual);
+        for (Object key: expected.keySet()) {
+            assertSame("Check key", key, findKey(cached, (String) key));
+            assertSame("Check value", expected.get(key), cached.get(key));
+        }
+    }
+    
+    /**
+     * Find equal key instance
+     * @param map
+     * @param key
+     * @return 
+     */
+    private static Object findKey(Map map, String key) {
+        for (Object item: map.keySet()) {
+            if (key.equals(item)) {
+                return item;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Test decoding limits
+     * @throws Exception 
+     */
+    public void testLimits() throws Exception {
+        DecodeLimits limits = new DecodeLimits(64, 4, 2, 128);
+        // Corrupt strict array count is not trusted
+        byte[] corrupt = { AmfTypes.AMF0_STRICT_ARRAY, 0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, AmfTypes.AMF0_NULL };
+        try {
+            new Amf0Reader(corrupt).read();
+            fail("Corrupt array accepted");
+        } catch (BufferUnderflowException ex) {
+            // Expected
+        }
+        assertLimited(limits, corrupt);
+        // Strings over 32767 bytes
+        String text = "";
+        for (int i = 0; i < 4000; i++) {
+            text += "Long text";
+        }
+        Amf0Parser parser = new Amf0Parser(encode(text));
+        assertEquals("Check token", parser.nextToken(), Amf0Token.STRING);
+        assertEquals("Check value", parser.getString(), text);
+        assertLimited(limits, encode(text));
+        // Entries, nesting and size
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < 5; i++) {
+            map.put("key" + i, (double) i);
+        }
+        assertLimited(limits, encode(map));
+        List<Object> list = new ArrayList<>();
+        List<Object> nested = new ArrayList<>();
+        nested.add(new ArrayList<>());
+        list.add(nested);
+        assertLimited(limits, encode(list));
+        List<Object> strings = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            strings.add("Short text " + i);
+        }
+        Amf0Parser valid = new Amf0Parser(encode(strings));
+        valid.setDecodeLimits(limits);
+        assertEquals("Check token", valid.nextToken(), Amf0Token.START_STRICT_ARRAY);
+        assertEquals("Check value", valid.skipValue(), 1);
+        limits = new DecodeLimits(64, 4, 2, 32);
+        assertLimited(limits, encode(strings));
+    }
+    
+    /**
+     * Encode value
+     * @param value
+     * @return
+     * @throws Exception 
+     */
+    private static ByteBuffer encode(Object value) throws Exception {
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.write(value);
+            return writer.getByteBuffer();
+        }
+    }
+    
+    /**
+     * Check data is rejected by the limits
+     * @param limits
+     * @param data 
+     */
+    private static void assertLimited(DecodeLimits limits, Object data) throws Exception {
+        Amf0Reader reader = data instanceof byte[] ? new Amf0Reader((byte[]) data) : new Amf0Reader((ByteBuffer) data);
+        reader.setDecodeLimits(limits);
+        try {
+            reader.read();
+            fail("Limits not applied");
+        } catch (AmfException ex) {
+            // Expected
+        }
+    }
+
+}
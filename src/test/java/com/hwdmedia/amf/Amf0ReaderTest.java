@@ -1,15 +1,32 @@
 package com.hwdmedia.amf;
 
+import java.io.ByteArrayInputStream;
 import java.lang.reflect.Field;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 import junit.framework.TestCase;
+import org.w3c.dom.Document;
 
 /**
  * AMF0 test case
@@ -235,5 +252,581 @@ public class Amf0ReaderTest extends TestCase {
         }
         assertEquals("Check size", count, 1);
     }
+    
+    /**
+     * Test writing into direct and pooled buffers
+     * @throws Exception 
+     */
+    public void testBuffers() throws Exception {
+        // Writing into small direct buffer with reserved header
+        ByteBuffer direct = ByteBuffer.allocateDirect(8);
+        direct.put((byte) 0x7f);
+        ByteBuffer data;
+        try (Amf0Writer writer = new Amf0Writer(direct)) {
+            writer.write("Русские символы");
+            writer.write(10.5);
+            data = writer.getByteBuffer();
+            assertTrue("Check direct", data.isDirect());
+            assertEquals("Check size", data.remaining(), writer.size());
+        }
+        Amf0Reader reader = new Amf0Reader(data);
+        assertEquals("Check value", reader.read(), "Русские символы");
+        assertEquals("Check value", reader.read(), 10.5);
+        // Writing into pooled buffers
+        final List<ByteBuffer> released = new ArrayList<>();
+        ByteBufferPool pool = new ByteBufferPool() {
+            @Override
+            public ByteBuffer acquire(int capacity) {
+                return ByteBuffer.allocate(capacity);
+            }
+            @Override
+            public void release(ByteBuffer buffer) {
+                released.add(buffer);
+            }
+        };
+        byte[] bytes;
+        try (Amf0Writer writer = new Amf0Writer(pool)) {
+            for (int i = 0; i < 100; i++) {
+                writer.write((double) i);
+            }
+            bytes = writer.getBytes();
+        }
+        assertEquals("Check size", bytes.length, 900);
+        assertEquals("Check released", released.size(), 3);
+    }
+    
+    /**
+     * Test objects with public fields
+     * @throws Exception 
+     */
+    public void testPublicFields() throws Exception {
+        // Writing
+        Status actual = new Status();
+        actual.code = "NetStream.Play.Start";
+        actual.level = "status";
+        ByteBuffer data;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.write(actual);
+            writer.write(actual);
+            data = writer.getByteBuffer();
+        }
+        // Reading
+        Amf0Reader reader = new Amf0Reader(data);
+        int count = 0;
+        while (reader.hasNext()) {
+            Object expected = reader.read();
+            assertTrue("Check type", expected instanceof Map);
+            Map map = (Map) expected;
+            assertEquals("Check size", map.size(), 3);
+            assertEquals("Check value", map.get("code"), actual.code);
+            assertEquals("Check value", map.get("level"), actual.level);
+            assertEquals("Check value", map.get("duration"), actual.duration);
+            count++;
+        }
+        assertEquals("Check size", count, 2);
+    }
+    
+    /**
+     * Status object
+     */
+    public static class Status {
+        public static final String TYPE = "onStatus";
+        public String code;
+        public String level;
+        public double duration = 1.5;
+    }
+    
+    /**
+     * Test typed objects and binding to classes
+     * @throws Exception 
+     */
+    public void testTypedObject() throws Exception {
+        ClassAliasRegistry registry = new ClassAliasRegistry();
+        registry.register("com.hwdmedia.Status", Status.class);
+        // Writing
+        Status actual = new Status();
+        actual.code = "NetStream.Play.Start";
+        actual.level = "status";
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("width", 640.0);
+        metadata.put("title", "Test");
+        metadata.put("status", actual);
+        metadata.put("unknown", "Skipped");
+        ByteBuffer data;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.setClassRegistry(registry);
+            writer.write(actual);
+            writer.write(metadata);
+            data = writer.getByteBuffer();
+        }
+        assertEquals("Check marker", data.get(0), AmfTypes.AMF0_TYPED_OBJECT);
+        // Reading
+        Amf0Reader reader = new Amf0Reader(data);
+        reader.setClassRegistry(registry);
+        Object expected = reader.read();
+        assertTrue("Check type", expected instanceof Status);
+        assertEquals("Check value", ((Status) expected).code, actual.code);
+        assertEquals("Check value", ((Status) expected).duration, actual.duration);
+        Metadata bound = reader.read(Metadata.class);
+        assertEquals("Check value", bound.getWidth(), 640);
+        assertEquals("Check value", bound.title, "Test");
+        assertEquals("Check value", bound.status.level, actual.level);
+        assertTrue("Check end", !reader.hasNext());
+    }
+    
+    /**
+     * Metadata bean
+     */
+    public static class Metadata {
+        private int width;
+        public String title;
+        public Status status;
+        public int getWidth() {
+            return width;
+        }
+        public void setWidth(int width) {
+            this.width = width;
+        }
+    }
+    
+    /**
+     * Test references to shared and cyclic values
+     * @throws Exception 
+     */
+    public void testReferences() throws Exception {
+        // Writing
+        Map<String, Object> shared = new LinkedHashMap<>();
+        shared.put("server", "FMS/3,5,7,7009");
+        List<Object> actual = new ArrayList<>();
+        actual.add(shared);
+        actual.add(shared);
+        actual.add(actual);
+        ByteBuffer data;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.write(actual);
+            data = writer.getByteBuffer();
+        }
+        // Strict array, ECMA array with end marker and two references
+        assertEquals("Check size", data.remaining(), 5 + 5 + 2 + 6 + 17 + 3 + 3 + 3);
+        // Reading
+        Amf0Reader reader = new Amf0Reader(data);
+        List expected = (List) reader.read();
+        assertEquals("Check size", expected.size(), 3);
+        assertEquals("Check value", expected.get(0), shared);
+        assertSame("Check reference", expected.get(0), expected.get(1));
+        assertSame("Check reference", expected.get(2), expected);
+    }
+    
+    /**
+     * Test skipping values and finding value by path
+     * @throws Exception 
+     */
+    public void testFind() throws Exception {
+        // Writing
+        List<Object> times = new ArrayList<>();
+        times.add(0.0);
+        times.add(2.5);
+        ByteBuffer data;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.write("onMetaData");
+            for (int i = 0; i < 3; i++) {
+                Map<String, Object> keyframes = new LinkedHashMap<>();
+                keyframes.put("filepositions", new ArrayList<>(times));
+                keyframes.put("times", new ArrayList<>(times));
+                Map<String, Object> actual = new LinkedHashMap<>();
+                actual.put("keyframes", keyframes);
+                actual.put("encoder", "Lavf58.29.100");
+                actual.put("duration", 5.0);
+                writer.write(actual);
+            }
+            writer.write("end");
+            data = writer.getByteBuffer();
+        }
+        // Reading
+        Amf0Reader reader = new Amf0Reader(data.duplicate());
+        reader.skip();
+        assertEquals("Check value", reader.find("keyframes", "times"), times);
+        assertEquals("Check value", reader.find("keyframes", "times", "1"), 2.5);
+        ByteBuffer slice = reader.findSlice("duration");
+        assertEquals("Check size", slice.remaining(), 9);
+        assertEquals("Check value", new Amf0Reader(slice).read(), 5.0);
+        assertEquals("Check value", reader.read(), "end");
+        assertFalse("Check end", reader.hasNext());
+        // Missing path
+        reader = new Amf0Reader(data);
+        assertNull("Check value", reader.find("keyframes"));
+        assertNull("Check value", reader.find("keyframes", "size"));
+        assertNull("Check value", reader.find("keyframes", "times", "2"));
+        assertNull("Check value", reader.find("duration", "value"));
+        assertEquals("Check value", reader.read(), "end");
+    }
+    
+    /**
+     * Test lazy views and their raw copying
+     * @throws Exception 
+     */
+    public void testLazy() throws Exception {
+        // Writing
+        List<Object> list = new ArrayList<>();
+        list.add(1.0);
+        list.add("two");
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("level", "status");
+        info.put("list", list);
+        Map<String, Object> actual = new LinkedHashMap<>();
+        actual.put("code", "NetStream.Play.Start");
+        actual.put("info", info);
+        actual.put("same", list);
+        ByteBuffer data;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.write(actual);
+            writer.write(info);
+            data = writer.getByteBuffer();
+        }
+        // Reading
+        Amf0Reader reader = new Amf0Reader(data.duplicate());
+        Map expected = (Map) reader.readLazy();
+        assertEquals("Check value", expected.get("code"), "NetStream.Play.Start");
+        assertEquals("Check value", expected, actual);
+        // Next value has own references, views of the previous one still resolve
+        assertEquals("Check value", reader.readLazy(), info);
+        assertSame("Check reference", ((Map) expected.get("info")).get("list"), expected.get("same"));
+        // Raw copying
+        Map expectedInfo = (Map) expected.get("info");
+        byte[] raw;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.write(expectedInfo);
+            writer.write(expected);
+            raw = writer.getBytes();
+        }
+        reader = new Amf0Reader(raw);
+        assertEquals("Check value", reader.read(), info);
+        assertEquals("Check value", reader.read(), actual);
+        byte[] encoded;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.write(info);
+            encoded = writer.getBytes();
+        }
+        assertTrue("Check bytes", Arrays.equals(Arrays.copyOf(raw, encoded.length), encoded));
+    }
+    
+    /**
+     * Test primitive strict arrays
+     * @throws Exception 
+     */
+    public void testPrimitiveArrays() throws Exception {
+        // Writing
+        double[] doubles = new double[] { 0.0, 2.5, -1.0 };
+        List<Object> mixed = new ArrayList<>();
+        mixed.add(1.0);
+        mixed.add("two");
+        ByteBuffer data;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.write(doubles);
+            writer.write(new int[] { 1, 2, 3 });
+            writer.write(new long[] { 1L << 40 });
+            writer.write(new float[] { 0.5f });
+            writer.write(new boolean[] { true, false });
+            writer.write(new char[] { 'o', 'k' });
+            writer.write(mixed);
+            writer.write(new double[0]);
+            writer.write(doubles);
+            data = writer.getByteBuffer();
+        }
+        // Reading
+        Amf0Reader reader = new Amf0Reader(data.duplicate());
+        reader.setPrimitiveArrays(true);
+        double[] expected = (double[]) reader.read();
+        assertTrue("Check value", Arrays.equals(expected, doubles));
+        assertTrue("Check value", Arrays.equals((double[]) reader.read(), new double[] { 1, 2, 3 }));
+        assertTrue("Check value", Arrays.equals((double[]) reader.read(), new double[] { 1L << 40 }));
+        assertTrue("Check value", Arrays.equals((double[]) reader.read(), new double[] { 0.5 }));
+        assertTrue("Check value", Arrays.equals((boolean[]) reader.read(), new boolean[] { true, false }));
+        assertEquals("Check value", reader.read(), "ok");
+        assertEquals("Check value", reader.read(), mixed);
+        assertEquals("Check value", reader.read(), new ArrayList<>());
+        assertTrue("Check value", Arrays.equals((double[]) reader.read(), doubles));
+        // Lists by default
+        reader = new Amf0Reader(data);
+        List<Object> list = new ArrayList<>();
+        list.add(0.0);
+        list.add(2.5);
+        list.add(-1.0);
+        assertEquals("Check value", reader.read(), list);
+    }
+    
+    /**
+     * Test UTF-8 encoding of supplementary characters in values and keys
+     * @throws Exception 
+     */
+    public void testSupplementaryCharacters() throws Exception {
+        // Writing
+        String text = "Smile 😀, Русские символы, 강남스타일";
+        Map<String, Object> actual = new LinkedHashMap<>();
+        actual.put(text, text);
+        ByteBuffer data;
+        try (Amf0Writer writer = new Amf0Writer(ByteBuffer.allocateDirect(16))) {
+            writer.write(text);
+            writer.write(actual);
+            writer.write("lone \uD83D surrogate");
+            data = writer.getByteBuffer();
+        }
+        byte[] bytes = text.getBytes("UTF-8");
+        assertEquals("Check size", data.getShort(data.position() + 1), bytes.length);
+        // Reading
+        Amf0Reader reader = new Amf0Reader(data);
+        assertEquals("Check value", reader.read(), text);
+        assertEquals("Check value", reader.read(), actual);
+        assertEquals("Check value", reader.read(), "lone ? surrogate");
+    }
+    
+    /**
+     * Test XML documents reading modes
+     * @throws Exception 
+     */
+    public void testXmlDocuments() throws Exception {
+        // Writing
+        StringBuilder source = new StringBuilder("<items>");
+        for (int i = 0; i < 5000; i++) {
+            source.append("<item id=\"").append(i).append("\">Элемент</item>");
+        }
+        source.append("</items>");
+        XmlDocument actual = new XmlDocument(source.toString());
+        ByteBuffer data;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.write(actual);
+            writer.write(actual.getDocument());
+            data = writer.getByteBuffer();
+        }
+        // Reading
+        Amf0Reader reader = new Amf0Reader(data.duplicate());
+        Document document = (Document) reader.read();
+        assertEquals("Check value", document.getDocumentElement().getChildNodes().getLength(), 5000);
+        assertEquals("Check value", ((Document) reader.read()).getDocumentElement().getLastChild().getTextContent(), "Элемент");
+        reader = new Amf0Reader(data.duplicate());
+        reader.setXmlMode(XmlMode.STRING);
+        assertEquals("Check value", reader.read(), source.toString());
+        reader = new Amf0Reader(data);
+        reader.setXmlMode(XmlMode.LAZY);
+        XmlDocument expected = (XmlDocument) reader.read();
+        assertEquals("Check value", expected.getSource(), source.toString());
+        XMLStreamReader stream = expected.createStreamReader();
+        int count = 0;
+        while (stream.hasNext()) {
+            if (stream.next() == XMLStreamConstants.START_ELEMENT && stream.getLocalName().equals("item")) {
+                count++;
+            }
+        }
+        assertEquals("Check value", count, 5000);
+        assertEquals("Check value", expected.getDocument().getDocumentElement().getTagName(), "items");
+    }
+    
+    
+    /**
+     * Test reading from stream through small refill buffer
+     * @throws Exception 
+     */
+    public void testInputStream() throws Exception {
+        // Writing
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            text.append("Строка ").append(i);
+        }
+        List<Object> numbers = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            numbers.add((double) i);
+        }
+        Map<String, Object> ecma = new LinkedHashMap<>();
+        ecma.put("first", "value");
+        ecma.put("second", numbers);
+        Map<String, Object> object = new HashMap<>();
+        object.put("text", text.toString());
+        object.put("ecma", ecma);
+        object.put("date", new Date(1380000000000L));
+        object.put("same", numbers);
+        byte[] data;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.write(text.toString());
+            writer.write(numbers);
+            writer.write(object);
+            writer.write(1.5);
+            data = writer.getBytes();
+        }
+        // Reading by few bytes at a time
+        for (int bufferSize: new int[] {1, 16, 8192}) {
+            Amf0Reader expected = new Amf0Reader(data);
+            Amf0Reader actual = new Amf0Reader(new ByteArrayInputStream(data) {
+                @Override
+                public synchronized int read(byte[] b, int off, int len) {
+                    return super.read(b, off, Math.min(len, 7));
+                }
+            }, bufferSize);
+            while (expected.hasNext()) {
+                assertTrue("Check has next", actual.hasNext());
+                assertEquals("Check value", actual.read(), expected.read());
+            }
+            assertFalse("Check has next", actual.hasNext());
+        }
+        // Truncated data
+        Amf0Reader reader = new Amf0Reader(new ByteArrayInputStream(Arrays.copyOf(data, 1000)), 16);
+        try {
+            reader.read();
+            fail("Exception expected");
+        } catch (BufferUnderflowException ex) {
+            // Expected
+        }
+    }
+    
+    /**
+     * Test references table doesn't grow with the stream
+     * @throws Exception
+     */
+    public void testInputStreamReferences() throws Exception {
+        byte[] data;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            for (int i = 0; i < 50000; i++) {
+                writer.write(Arrays.asList((double) i));
+            }
+            data = writer.getBytes();
+        }
+        Amf0Reader reader = new Amf0Reader(new ByteArrayInputStream(data), 1024);
+        Field references = Amf0Reader.class.getDeclaredField("references");
+        references.setAccessible(true);
+        int count = 0;
+        while (reader.hasNext()) {
+            assertEquals("Check value", reader.read(), Arrays.asList((double) count));
+            assertTrue("Check references", ((List) references.get(reader)).size() <= 1);
+            count++;
+        }
+        assertEquals("Check count", count, 50000);
+    }
+    
+    /**
+     * Test date modes and java.time values
+     * @throws Exception 
+     */
+    public void testDateModes() throws Exception {
+        // Writing
+        long millis = 1380000000123L;
+        Instant instant = Instant.ofEpochMilli(millis);
+        Event event = new Event();
+        event.time = millis;
+        event.instant = instant;
+        ByteBuffer data;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.write(instant);
+            writer.write(OffsetDateTime.ofInstant(instant, ZoneOffset.ofHours(3)));
+            writer.write(ZonedDateTime.ofInstant(instant, ZoneId.of("Europe/Kiev")));
+            writer.write(new Date(millis));
+            writer.write(event);
+            data = writer.getByteBuffer();
+        }
+        // Reading
+        Amf0Reader reader = new Amf0Reader(data.duplicate());
+        reader.setDateMode(DateMode.EPOCH_MILLIS);
+        for (int i = 0; i < 4; i++) {
+            assertEquals("Check value", reader.read(), millis);
+        }
+        reader = new Amf0Reader(data.duplicate());
+        reader.setDateMode(DateMode.INSTANT);
+        for (int i = 0; i < 4; i++) {
+            assertEquals("Check value", reader.read(), instant);
+        }
+        Event expected = reader.read(Event.class);
+        assertEquals("Check value", expected.time, millis);
+        assertEquals("Check value", expected.instant, instant);
+        reader = new Amf0Reader(data);
+        data.get();
+        assertEquals("Check value", reader.readEpochMillis(), millis);
+        data.get();
+        assertEquals("Check value", reader.readInstant(), instant);
+        data.get();
+        assertEquals("Check value", reader.readDate(), new Date(millis));
+        // AMF3
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.writeAmf3(instant);
+            writer.writeAmf3(ZonedDateTime.ofInstant(instant, ZoneId.of("UTC")));
+            reader = new Amf0Reader(writer.getByteBuffer());
+            assertEquals("Check value", reader.read(), new Date(millis));
+            assertEquals("Check value", reader.read(Instant.class), instant);
+        }
+    }
+    
+    /**
+     * Event object
+     */
+    public static class Event {
+        public long time;
+        public Instant instant;
+    }
+    
+    /**
+     * Test top level values don't reference each other
+     * @throws Exception 
+     */
+    public void testIndependentValues() throws Exception {
+        // Writing
+        Map<String, Object> actual = new LinkedHashMap<>();
+        actual.put("x", 1.0);
+        ByteBuffer data;
+        int first;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.write(actual);
+            first = writer.size();
+            actual.put("x", 2.0);
+            writer.write(actual);
+            data = writer.getByteBuffer();
+        }
+        assertEquals("Check size", data.remaining(), 2 * first);
+        // Reading
+        Amf0Reader reader = new Amf0Reader(data.duplicate());
+        assertEquals("Check value", reader.read(), Collections.singletonMap("x", 1.0));
+        assertEquals("Check value", reader.read(), actual);
+        // Second value alone
+        data.position(first);
+        assertEquals("Check value", new Amf0Reader(data).read(), actual);
+    }
+    
+    /**
+     * Test AMF0 and AMF3 top level values don't reference each other
+     * @throws Exception 
+     */
+    public void testIndependentMixedValues() throws Exception {
+        // Writing
+        List<Object> list = new ArrayList<>();
+        list.add("item");
+        Map<String, Object> actual = new LinkedHashMap<>();
+        actual.put("list", list);
+        actual.put("same", list);
+        ByteBuffer data;
+        int[] offsets = new int[5];
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.write(actual);
+            offsets[1] = writer.size();
+            writer.writeAmf3(actual);
+            offsets[2] = writer.size();
+            writer.write(actual);
+            offsets[3] = writer.size();
+            writer.setAmf3(true);
+            writer.write(actual);
+            offsets[4] = writer.size();
+            writer.setAmf3(false);
+            writer.writeAmf3(actual);
+            data = writer.getByteBuffer();
+        }
+        // Reading
+        Amf0Reader reader = new Amf0Reader(data.duplicate());
+        for (int i = 0; i < offsets.length; i++) {
+            Map value = (Map) reader.read();
+            assertEquals("Check value", value, actual);
+            assertSame("Check reference", value.get("same"), value.get("list"));
+        }
+        // Each value alone
+        for (int i = 0; i < offsets.length; i++) {
+            ByteBuffer slice = data.duplicate();
+            slice.position(offsets[i]);
+            assertEquals("Check value", new Amf0Reader(slice.slice()).read(), actual);
+        }
+    }
 
 }
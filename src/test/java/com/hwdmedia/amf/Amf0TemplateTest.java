@@ -0,0 +1,87 @@
+package com.hwdmedia.amf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import junit.framework.TestCase;
+
+/**
+ * AMF0 template test case
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public class Amf0TemplateTest extends TestCase {
+    
+    public Amf0TemplateTest(String testName) {
+        super(testName);
+    }
+    
+    /**
+     * Test template writes the same bytes as values written directly
+     * @throws Exception 
+     */
+    public void testOnStatus() throws Exception {
+        // Template
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("level", "status");
+        info.put("code", "NetStream.Play.Start");
+        info.put("description", Amf0Template.slot("description"));
+        info.put("details", Amf0Template.slot("details"));
+        info.put("clientid", Amf0Template.slot("clientid"));
+        Amf0Template template = Amf0Template.compile("onStatus", Amf0Template.slot("transaction"), null, info);
+        assertEquals("Check slots", template.getSlotNames(), Arrays.asList("transaction", "description", "details", "clientid"));
+        // Writing
+        List<Object> shared = new ArrayList<>();
+        shared.add("shared");
+        byte[] actual;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.write(shared);
+            writer.write(template, 5.0, "Started playing livestream.", "livestream", 1234.0);
+            writer.write(template, 6.0, "Started playing vod.", shared, 1234.0);
+            writer.write(template, 7.0, "Started playing pair.", Arrays.asList(shared, shared), 1234.0);
+            writer.write(shared);
+            actual = writer.getBytes();
+        }
+        byte[] expected;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.write(shared);
+            for (Object[] values : new Object[][] {
+                { 5.0, "Started playing livestream.", "livestream" },
+                { 6.0, "Started playing vod.", shared },
+                { 7.0, "Started playing pair.", Arrays.asList(shared, shared) } }) {
+                Map<String, Object> status = new LinkedHashMap<>();
+                status.put("level", "status");
+                status.put("code", "NetStream.Play.Start");
+                status.put("description", values[1]);
+                status.put("details", values[2]);
+                status.put("clientid", 1234.0);
+                writer.write("onStatus");
+                writer.write(values[0]);
+                writer.write(null);
+                writer.write(status);
+            }
+            writer.write(shared);
+            expected = writer.getBytes();
+        }
+        assertTrue("Check bytes", Arrays.equals(actual, expected));
+    }
+    
+    /**
+     * Test shared values are rejected
+     * @throws Exception 
+     */
+    public void testShared() throws Exception {
+        List<Object> shared = new ArrayList<>();
+        try {
+            Amf0Template.compile(Arrays.asList(shared, shared));
+            fail("Shared values accepted");
+        } catch (AmfException ex) {
+            // Expected
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+package com.hwdmedia.amf;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import junit.framework.TestCase;
+
+/**
+ * AMF3 test case
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public class Amf3ReaderTest extends TestCase {
+    
+    public Amf3ReaderTest(String testName) {
+        super(testName);
+    }
+    
+    /**
+     * Test scalar values
+     * @throws Exception 
+     */
+    public void testScalars() throws Exception {
+        // Writing
+        Object[] actuals = {0, 127, 128, 16383, 16384, 0x0FFFFFFF, -1, -0x10000000, 123.456, true, false,
+            null, "Русские символы", "", "Русские символы", new Date()};
+        ByteBuffer data;
+        try (Amf3Writer writer = new Amf3Writer()) {
+            for (Object value: actuals) {
+                writer.write(value);
+            }
+            data = writer.getByteBuffer();
+        }
+        // Reading
+        Amf3Reader reader = new Amf3Reader(data);
+        int count = 0;
+        while (reader.hasNext()) {
+            assertEquals("Check value", reader.read(), actuals[count]);
+            count++;
+        }
+        assertEquals("Check size", count, actuals.length);
+    }
+    
+    /**
+     * Test integers out of 29 bit range are written as doubles
+     * @throws Exception 
+     */
+    public void testLargeIntegers() throws Exception {
+        byte[] data;
+        try (Amf3Writer writer = new Amf3Writer()) {
+            writer.write(Integer.MAX_VALUE);
+            data = writer.getBytes();
+        }
+        assertEquals("Check marker", data[0], AmfTypes.AMF3_DOUBLE);
+        assertEquals("Check value", new Amf3Reader(data).read(), (double) Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Test arrays, vectors and references
+     * @throws Exception 
+     */
+    public void testArrays() throws Exception {
+        // Writing
+        List<Object> list = new ArrayList<>();
+        list.add("first");
+        list.add(2);
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("list", list);
+        map.put("same", list);
+        map.put("bytes", new byte[] {1, 2, 3});
+        map.put("ints", new int[] {1, -2, 3});
+        map.put("doubles", new double[] {1.5, 2.5});
+        ByteBuffer data;
+        try (Amf3Writer writer = new Amf3Writer()) {
+            writer.write(map);
+            data = writer.getByteBuffer();
+        }
+        // Reading
+        Map expected = (Map) new Amf3Reader(data).read();
+        assertEquals("Check value", expected.get("list"), list);
+        assertSame("Check reference", expected.get("list"), expected.get("same"));
+        assertTrue("Check value", Arrays.equals((byte[]) expected.get("bytes"), new byte[] {1, 2, 3}));
+        assertTrue("Check value", Arrays.equals((int[]) expected.get("ints"), new int[] {1, -2, 3}));
+        assertTrue("Check value", Arrays.equals((double[]) expected.get("doubles"), new double[] {1.5, 2.5}));
+    }
+    
+    /**
+     * Test objects with traits
+     * @throws Exception 
+     */
+    public void testObjects() throws Exception {
+        ClassAliasRegistry registry = new ClassAliasRegistry();
+        registry.register("com.hwdmedia.Status", Amf0ReaderTest.Status.class);
+        // Writing
+        Amf0ReaderTest.Status first = new Amf0ReaderTest.Status();
+        first.code = "NetStream.Play.Start";
+        Amf0ReaderTest.Status second = new Amf0ReaderTest.Status();
+        second.code = "NetStream.Play.Stop";
+        ByteBuffer data;
+        try (Amf3Writer writer = new Amf3Writer()) {
+            writer.setClassRegistry(registry);
+            writer.write(first);
+            writer.write(second);
+            data = writer.getByteBuffer();
+        }
+        // Reading typed objects
+        Amf3Reader reader = new Amf3Reader(data.duplicate());
+        reader.setClassRegistry(registry);
+        assertEquals("Check value", ((Amf0ReaderTest.Status) reader.read()).code, first.code);
+        assertEquals("Check value", ((Amf0ReaderTest.Status) reader.read()).code, second.code);
+        // Reading anonymous objects
+        reader = new Amf3Reader(data);
+        assertEquals("Check value", ((Map) reader.read()).get("code"), first.code);
+        assertEquals("Check value", ((Map) reader.read()).get("duration"), second.duration);
+    }
+    
+    /**
+     * Test AMF3 values inside AMF0 data
+     * @throws Exception 
+     */
+    public void testAvmPlus() throws Exception {
+        // Writing
+        List<Object> list = new ArrayList<>();
+        list.add(1);
+        list.add("two");
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("list", list);
+        map.put("same", list);
+        ByteBuffer data;
+        int offset;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.write("_result");
+            writer.writeAmf3(map);
+            map.put("count", 3.0);
+            offset = writer.size();
+            writer.writeAmf3(map);
+            writer.write(3.0);
+            data = writer.getByteBuffer();
+        }
+        // Reading
+        Amf0Reader reader = new Amf0Reader(data.duplicate());
+        assertEquals("Check value", reader.read(), "_result");
+        Map first = (Map) reader.read();
+        assertSame("Check reference", first.get("same"), first.get("list"));
+        assertEquals("Check value", reader.read(), map);
+        assertEquals("Check value", reader.read(), 3.0);
+        // Reading second AMF3 value on its own
+        data.position(offset);
+        reader = new Amf0Reader(data.slice());
+        assertEquals("Check value", reader.read(), map);
+    }
+
+}
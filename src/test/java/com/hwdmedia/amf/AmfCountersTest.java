@@ -0,0 +1,97 @@
+package com.hwdmedia.amf;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.fail;
+import junit.framework.TestCase;
+
+/**
+ * Metrics counters test case
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public class AmfCountersTest extends TestCase {
+    
+    public AmfCountersTest(String testName) {
+        super(testName);
+    }
+    
+    /**
+     * Test top level values are counted by reader and writer
+     * @throws Exception 
+     */
+    public void testCounters() throws Exception {
+        Map<String, Object> object = new LinkedHashMap<>();
+        object.put("nested", Collections.singletonMap("list", Arrays.asList(1.0, 2.0)));
+        AmfCounters counters = new AmfCounters();
+        // Writing
+        ByteBuffer data;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.setMetrics(counters);
+            writer.write("value");
+            writer.write(object);
+            writer.write(1.0);
+            data = writer.getByteBuffer();
+        }
+        assertEquals("Check values", counters.getEncodedValues(AmfTypes.AMF0_STRING), 1);
+        assertEquals("Check bytes", counters.getEncodedBytes(AmfTypes.AMF0_STRING), 8);
+        assertEquals("Check values", counters.getEncodedValues(AmfTypes.AMF0_ECMA_ARRAY), 1);
+        assertEquals("Check values", counters.getEncodedValues(AmfTypes.AMF0_NUMBER), 1);
+        assertEquals("Check bytes", counters.getEncodedBytes(AmfTypes.AMF0_NUMBER), 9);
+        // Reading
+        Amf0Reader reader = new Amf0Reader(data.duplicate());
+        reader.setMetrics(counters);
+        while (reader.hasNext()) {
+            reader.read();
+        }
+        assertEquals("Check values", counters.getDecodedValues(AmfTypes.AMF0_STRING), 1);
+        assertEquals("Check bytes", counters.getDecodedBytes(AmfTypes.AMF0_STRING), 8);
+        assertEquals("Check bytes", counters.getDecodedBytes(AmfTypes.AMF0_ECMA_ARRAY), counters.getEncodedBytes(AmfTypes.AMF0_ECMA_ARRAY));
+        assertEquals("Check depth", counters.getMaxDepth(), 3);
+        long total = 0;
+        for (long count: counters.getDecodeTimes()) {
+            total += count;
+        }
+        assertEquals("Check times", total, 3);
+        // Errors
+        data.put(data.position(), (byte) 0x20);
+        reader = new Amf0Reader(data);
+        reader.setMetrics(counters);
+        try {
+            reader.read();
+            fail("Exception expected");
+        } catch (AmfException ex) {
+            // Expected
+        }
+        assertEquals("Check errors", counters.getDecodeErrors(), Collections.singletonMap("Unsupported marker type", 1L));
+    }
+    
+    /**
+     * Test templates and AMF3 values are counted by writer
+     * @throws Exception 
+     */
+    public void testTemplateAndAmf3() throws Exception {
+        Amf0Template template = Amf0Template.compile("onStatus", Amf0Template.slot("code"));
+        AmfCounters counters = new AmfCounters();
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.setMetrics(counters);
+            writer.write(template, 1.0);
+            writer.writeAmf3(Arrays.asList(1.0, 2.0));
+            try {
+                writer.write(template, 1.0, 2.0);
+                fail("Exception expected");
+            } catch (AmfException ex) {
+                // Expected
+            }
+        }
+        assertEquals("Check values", counters.getEncodedValues(AmfTypes.AMF0_STRING), 1);
+        assertEquals("Check bytes", counters.getEncodedBytes(AmfTypes.AMF0_STRING), 11 + 9);
+        assertEquals("Check values", counters.getEncodedValues(AmfTypes.AMF0_AVMPLUS_OBJECT), 1);
+        assertEquals("Check errors", counters.getEncodeErrors().size(), 1);
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.hwdmedia.amf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import junit.framework.TestCase;
+
+/**
+ * Compact map test case
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public class CompactMapTest extends TestCase {
+    
+    public CompactMapTest(String testName) {
+        super(testName);
+    }
+    
+    /**
+     * Test map behaves as LinkedHashMap below and above hashing threshold
+     * @throws Exception
+     */
+    public void testLinkedHashMapContract() throws Exception {
+        for (int size: new int[] {0, 3, 8, 9, 100}) {
+            CompactMap<String, Object> actual = new CompactMap<>(2);
+            Map<String, Object> expected = new LinkedHashMap<>();
+            for (int i = 0; i < size; i++) {
+                actual.put("key" + i, (double) i);
+                expected.put("key" + i, (double) i);
+            }
+            actual.put("key0", "replaced");
+            expected.put("key0", "replaced");
+            actual.put(null, null);
+            expected.put(null, null);
+            actual.trimToSize();
+            assertEquals("Check map", actual, expected);
+            assertEquals("Check order", new ArrayList<>(actual.keySet()), new ArrayList<>(expected.keySet()));
+            assertEquals("Check hash code", actual.hashCode(), expected.hashCode());
+            assertEquals("Check value", actual.get("key" + (size - 1)), expected.get("key" + (size - 1)));
+            assertFalse("Check missing", actual.containsKey("missing"));
+            // Removing
+            assertEquals("Check remove", actual.remove("key1"), expected.remove("key1"));
+            Iterator<Map.Entry<String, Object>> iterator = actual.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Object> entry = iterator.next();
+                if (null == entry.getKey()) {
+                    entry.setValue("set");
+                } else if (entry.getKey().endsWith("5")) {
+                    iterator.remove();
+                }
+            }
+            for (Iterator<String> keys = expected.keySet().iterator(); keys.hasNext();) {
+                String key = keys.next();
+                if (null != key && key.endsWith("5")) {
+                    keys.remove();
+                }
+            }
+            expected.put(null, "set");
+            assertEquals("Check map", actual, expected);
+            for (String key: expected.keySet()) {
+                assertEquals("Check value", actual.get(key), expected.get(key));
+            }
+            assertNull("Check removed", actual.get("key5"));
+            // Serialization
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(actual);
+            }
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                Map<String, Object> copy = (Map<String, Object>) in.readObject();
+                assertEquals("Check map", copy, expected);
+                assertEquals("Check value", copy.get("key" + (size - 1)), expected.get("key" + (size - 1)));
+            }
+        }
+    }
+
+}
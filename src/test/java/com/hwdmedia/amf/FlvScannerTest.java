@@ -0,0 +1,92 @@
+package com.hwdmedia.amf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import junit.framework.TestCase;
+
+/**
+ * FLV scanner test case
+ * 
+ * @author Gennadiy Kozlenko
+ */
+public class FlvScannerTest extends TestCase {
+    
+    public FlvScannerTest(String testName) {
+        super(testName);
+    }
+    
+    /**
+     * Test metadata extraction
+     * @throws Exception 
+     */
+    public void testMetaData() throws Exception {
+        // Writing
+        List<Object> times = new ArrayList<>();
+        times.add(0.0);
+        times.add(2.5);
+        List<Object> positions = new ArrayList<>();
+        positions.add(13.0);
+        positions.add(4096.0);
+        Map<String, Object> keyframes = new LinkedHashMap<>();
+        keyframes.put("times", times);
+        keyframes.put("filepositions", positions);
+        Map<String, Object> metaData = new LinkedHashMap<>();
+        metaData.put("duration", 5.0);
+        metaData.put("keyframes", keyframes);
+        byte[] script;
+        try (Amf0Writer writer = new Amf0Writer()) {
+            writer.write("onMetaData");
+            writer.write(metaData);
+            script = writer.getBytes();
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(new byte[] { 'F', 'L', 'V', 1, 5 });
+        out.writeInt(9);
+        out.writeInt(0);
+        writeTag(out, FlvScanner.TAG_AUDIO, 0, new byte[100]);
+        writeTag(out, FlvScanner.TAG_SCRIPT, 0, script);
+        writeTag(out, FlvScanner.TAG_VIDEO, 40, new byte[1000]);
+        File file = File.createTempFile("scanner", ".flv");
+        file.deleteOnExit();
+        try (FileOutputStream stream = new FileOutputStream(file)) {
+            stream.write(bytes.toByteArray());
+        }
+        // Reading
+        try (FlvScanner scanner = new FlvScanner(file)) {
+            Map<String, Object> expected = scanner.readMetaData();
+            assertEquals("Check value", scanner.getTagOffset(), 13 + 11 + 100 + 4);
+            assertEquals("Check value", expected.get("duration"), 5.0);
+            Map<String, Object> expectedKeyframes = (Map<String, Object>) expected.get("keyframes");
+            assertTrue("Check value", Arrays.equals((double[]) expectedKeyframes.get("times"), new double[] { 0.0, 2.5 }));
+            assertTrue("Check value", Arrays.equals((double[]) expectedKeyframes.get("filepositions"), new double[] { 13.0, 4096.0 }));
+            assertEquals("Check value", scanner.nextScriptTag(), false);
+        }
+    }
+    
+    /**
+     * Write FLV tag
+     * @param out
+     * @param type
+     * @param timestamp
+     * @param data
+     * @throws Exception 
+     */
+    private static void writeTag(DataOutputStream out, int type, int timestamp, byte[] data) throws Exception {
+        out.writeInt(type << 24 | data.length);
+        out.writeInt(timestamp << 8 | timestamp >>> 24);
+        out.write(new byte[3]);
+        out.write(data);
+        out.writeInt(11 + data.length);
+    }
+
+}